@@ -0,0 +1,100 @@
+package antessio.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import antessio.CodeReviewDataExporter;
+import antessio.DataExporterFromBackup;
+import antessio.common.FileUtils;
+import antessio.common.JsonArrayWriter;
+import antessio.common.ObjectMapperJsonConverter;
+
+/**
+ * Json backup read and write paths, streaming and whole-string, over a synthetic dataset.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BackupCodecBenchmark {
+
+    @Param({"1000", "100000"})
+    public int mergeRequests;
+
+    @Param({"5"})
+    public int commentsPerMr;
+
+    @Param({"10"})
+    public int teamSize;
+
+    private final ObjectMapperJsonConverter jsonConverter = new ObjectMapperJsonConverter();
+    private List<CodeReviewDataExporter.MergeRequest> dataset;
+    private Path backup;
+    private Path output;
+
+    @Setup
+    public void setUp() throws IOException {
+        dataset = SyntheticDataset.mergeRequests(mergeRequests, commentsPerMr, teamSize);
+        backup = Files.createTempFile("backup", ".json");
+        output = Files.createTempFile("output", ".json");
+        FileUtils.writeToFile(backup.toString(), jsonConverter.toJson(dataset));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(backup);
+        Files.deleteIfExists(output);
+    }
+
+    @Benchmark
+    public void streamingRead(Blackhole blackhole) {
+        try (Stream<CodeReviewDataExporter.MergeRequest> mergeRequests = new DataExporterFromBackup(backup.toString()).streamMergeRequests()) {
+            mergeRequests.forEach(blackhole::consume);
+        }
+    }
+
+    @Benchmark
+    public List<CodeReviewDataExporter.MergeRequest> materializedRead() {
+        return new DataExporterFromBackup(backup.toString()).getMergeRequests();
+    }
+
+    @Benchmark
+    public CodeReviewDataExporter.MergeRequest[] wholeStringRead() throws Exception {
+        return jsonConverter.fromJson(FileUtils.readFileAsString(backup.toString()), CodeReviewDataExporter.MergeRequest[].class);
+    }
+
+    @Benchmark
+    public Path streamingWrite() {
+        try (JsonArrayWriter<CodeReviewDataExporter.MergeRequest> writer = jsonConverter.toJsonArray(output)) {
+            dataset.forEach(writer::append);
+        }
+        return output;
+    }
+
+    @Benchmark
+    public Path wholeStringWrite() {
+        FileUtils.writeToFile(output.toString(), jsonConverter.toJson(dataset));
+        return output;
+    }
+
+}
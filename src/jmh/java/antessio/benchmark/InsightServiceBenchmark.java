@@ -0,0 +1,80 @@
+package antessio.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import antessio.CodeReviewDataExporter;
+import antessio.CodeReviewInsightService;
+import antessio.MarkdownReport;
+
+/**
+ * Insight computation and report rendering over a synthetic dataset; run with {@code -prof gc} for the allocation
+ * rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InsightServiceBenchmark {
+
+    @Param({"1000", "100000"})
+    public int mergeRequests;
+
+    @Param({"5"})
+    public int commentsPerMr;
+
+    @Param({"10"})
+    public int teamSize;
+
+    private List<CodeReviewDataExporter.MergeRequest> dataset;
+    private CodeReviewInsightService insights;
+    private File report;
+
+    @Setup
+    public void setUp() throws IOException {
+        dataset = SyntheticDataset.mergeRequests(mergeRequests, commentsPerMr, teamSize);
+        insights = new CodeReviewInsightService(dataset.stream());
+        report = Files.createTempFile("report", ".md").toFile();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(report.toPath());
+    }
+
+    @Benchmark
+    public CodeReviewInsightService insights() {
+        return new CodeReviewInsightService(dataset.stream());
+    }
+
+    @Benchmark
+    public CodeReviewInsightService parallelInsights() {
+        return new CodeReviewInsightService(dataset, ForkJoinPool.commonPool());
+    }
+
+    @Benchmark
+    public File markdownReport() {
+        new MarkdownReport(report, insights).generateReport();
+        return report;
+    }
+
+}
@@ -0,0 +1,71 @@
+package antessio.benchmark;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import antessio.CodeReviewDataExporter;
+
+/**
+ * Deterministic, randomly shaped merge requests: the same parameters always give the same dataset.
+ */
+public final class SyntheticDataset {
+
+    private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+    private static final String[] BODIES = {
+            "NIT: rename this variable",
+            "looks good to me",
+            "could you add a test for the empty case?",
+            "this query runs once per row, can we batch it?",
+            "NIT missing final newline"
+    };
+
+    private SyntheticDataset() {
+
+    }
+
+    public static List<CodeReviewDataExporter.MergeRequest> mergeRequests(int mergeRequests, int commentsPerMr, int teamSize) {
+        Random random = new Random(42);
+        List<String> team = new ArrayList<>();
+        for (int i = 0; i < teamSize; i++) {
+            team.add("user" + i);
+        }
+        List<CodeReviewDataExporter.Project> projects = List.of(
+                new CodeReviewDataExporter.Project("1", "backend", "https://gitlab.example.com/backend"),
+                new CodeReviewDataExporter.Project("2", "frontend", "https://gitlab.example.com/frontend"),
+                new CodeReviewDataExporter.Project("3", "infrastructure", "https://gitlab.example.com/infrastructure"));
+        List<CodeReviewDataExporter.MergeRequest> dataset = new ArrayList<>(mergeRequests);
+        for (int i = 0; i < mergeRequests; i++) {
+            Instant createdAt = START.plus(Duration.ofMinutes(random.nextInt(525_600)));
+            List<CodeReviewDataExporter.Comment> comments = new ArrayList<>();
+            int commentCount = random.nextInt(2 * commentsPerMr + 1);
+            for (int c = 0; c < commentCount; c++) {
+                comments.add(new CodeReviewDataExporter.Comment(
+                        team.get(random.nextInt(teamSize)),
+                        BODIES[random.nextInt(BODIES.length)],
+                        createdAt.plus(Duration.ofMinutes(random.nextInt(10_000)))));
+            }
+            List<CodeReviewDataExporter.Approval> approvals = new ArrayList<>();
+            int approvalCount = random.nextInt(3);
+            for (int a = 0; a < approvalCount; a++) {
+                approvals.add(new CodeReviewDataExporter.Approval(team.get(random.nextInt(teamSize))));
+            }
+            CodeReviewDataExporter.Project project = projects.get(random.nextInt(projects.size()));
+            dataset.add(new CodeReviewDataExporter.MergeRequest(
+                    String.valueOf(i),
+                    "merge request " + i,
+                    project.url() + "/-/merge_requests/" + i,
+                    team.get(random.nextInt(teamSize)),
+                    createdAt,
+                    createdAt.plus(Duration.ofMinutes(random.nextInt(20_000))),
+                    random.nextInt(100),
+                    approvals,
+                    comments,
+                    project));
+        }
+        return dataset;
+    }
+
+}
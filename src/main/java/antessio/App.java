@@ -1,15 +1,27 @@
 package antessio;
 
 import java.io.File;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Path;
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 import antessio.gitlab.GitLabExporter;
+import antessio.gitlab.GitLabGraphQLExporter;
 import antessio.gitlab.Gitlab;
+import antessio.server.InsightServer;
 
 /**
  * Hello world!
@@ -18,46 +30,170 @@ public class App {
 
 
     public static final String OUTPUT_FILE = "output/merge_requests.json";
+    public static final String SNAPSHOT_FILE = "output/merge_requests.snapshot";
+    public static final String ROLLUPS_FILE = "output/rollups.json";
+    public static final String HTTP_CACHE_DIRECTORY = "output/http_cache";
+    private static final int MAX_MERGE_REQUESTS = 1000;
+    private static final int DEFAULT_PORT = 8080;
+    private static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofHours(1);
 
     public static void main(String[] args) {
         String accessKey = System.getenv("gitlab.accesskey");
-        List<String> team = Arrays.stream(System.getenv("team")
-                .split(","))
-                .toList();
+        // batch mode: many reports out of a single crawl or read of the backup
+        List<ReportDefinition> reports = Optional.ofNullable(System.getenv("reports"))
+                                                 .map(Path::of)
+                                                 .map(ReportDefinition::read)
+                                                 .orElseGet(List::of);
+        List<String> team = Optional.ofNullable(System.getenv("team"))
+                                    .map(members -> Arrays.stream(members.split(",")).toList())
+                                    .orElseGet(List::of);
         String gitlabHost = System.getenv("gitlab.host");
         Boolean useBackup = Optional.ofNullable(System.getenv("useBackup"))
                 .map(Boolean::parseBoolean)
                 .orElse(false);
-        CodeReviewDataExporter exporter;
+        int concurrency = Optional.ofNullable(System.getenv("concurrency"))
+                                  .map(Integer::parseInt)
+                                  .orElse(GitLabExporter.Options.DEFAULT_CONCURRENCY);
+        int pageSize = Optional.ofNullable(System.getenv("pageSize"))
+                               .map(Integer::parseInt)
+                               .orElse(GitLabExporter.Options.DEFAULT_PAGE_SIZE);
+        boolean fullDiffs = Optional.ofNullable(System.getenv("fullDiffs"))
+                                    .map(Boolean::parseBoolean)
+                                    .orElse(false);
+        boolean incremental = Optional.ofNullable(System.getenv("incremental"))
+                                      .map(Boolean::parseBoolean)
+                                      .orElse(false);
+        boolean parallel = Optional.ofNullable(System.getenv("parallel"))
+                                   .map(Boolean::parseBoolean)
+                                   .orElse(false);
+        boolean invalidateCache = Optional.ofNullable(System.getenv("invalidateCache"))
+                                          .map(Boolean::parseBoolean)
+                                          .orElse(false);
+        boolean graphQL = Optional.ofNullable(System.getenv("graphql"))
+                                  .map(Boolean::parseBoolean)
+                                  .orElse(false);
+        Duration metadataTtl = Optional.ofNullable(System.getenv("metadataTtlHours"))
+                                       .map(Long::parseLong)
+                                       .map(Duration::ofHours)
+                                       .orElse(Gitlab.DEFAULT_METADATA_TTL);
+        boolean lazyCommentBodies = Optional.ofNullable(System.getenv("lazyCommentBodies"))
+                                            .map(Boolean::parseBoolean)
+                                            .orElse(false);
+        boolean daemon = Optional.ofNullable(System.getenv("daemon"))
+                                 .map(Boolean::parseBoolean)
+                                 .orElse(false);
+        int port = Optional.ofNullable(System.getenv("port"))
+                           .map(Integer::parseInt)
+                           .orElse(DEFAULT_PORT);
+        // local only unless asked otherwise, e.g. 0.0.0.0 to be reached from other hosts
+        InetAddress bindAddress = Optional.ofNullable(System.getenv("bindAddress"))
+                                          .map(App::inetAddress)
+                                          .orElseGet(InetAddress::getLoopbackAddress);
+        Duration refreshInterval = Optional.ofNullable(System.getenv("refreshMinutes"))
+                                           .map(Long::parseLong)
+                                           .map(Duration::ofMinutes)
+                                           .orElse(DEFAULT_REFRESH_INTERVAL);
         Clock clock = Clock.systemUTC();
         Instant now = clock.instant();
-        Instant from = now.atZone(ZoneId.of("UTC")).minusMonths(12).toInstant();
-        Instant to = now.atZone(ZoneId.of("UTC")).minusMonths(6).toInstant();
+        Instant from = windowFrom(now);
+        Instant to = windowTo(now);
+        int size = MAX_MERGE_REQUESTS;
+        if (!reports.isEmpty()) {
+            // the crawl covers every report; the backup has every author already
+            if (!useBackup) {
+                team = Stream.concat(team.stream(), ReportDefinition.teamOf(reports).stream()).distinct().toList();
+            }
+            from = ReportDefinition.fromOf(reports);
+            to = ReportDefinition.toOf(reports);
+            // as many merge requests as separate runs would have fetched, but as a single limit over the crawl: merge
+            // requests are taken in team order, the authors listed first can use the share of the others
+            size = MAX_MERGE_REQUESTS * reports.size();
+        }
+        BiFunction<Instant, Instant, CodeReviewDataExporter> exporters;
         if (useBackup){
-            exporter = Optional.of(OUTPUT_FILE)
-                               .map(File::new)
-                               .filter(File::exists)
-                               .map(DataExporterFromBackup::new)
-                               .map(CodeReviewDataExporter.class::cast)
-                    .orElseThrow(()-> new IllegalArgumentException("no backup found"));
+            exporters = (windowFrom, windowTo) -> fromBackup(lazyCommentBodies);
         }else{
-            exporter = new GitLabExporter(new Gitlab(accessKey, gitlabHost),
-                                          team,
-                                          1000,
-                                          List.of("1389"),
-                                          OUTPUT_FILE,
-                                          from,
-                                          to,
-                                          clock);
+            Gitlab gitlab = new Gitlab(accessKey, gitlabHost, Path.of(HTTP_CACHE_DIRECTORY), metadataTtl);
+            if (invalidateCache) {
+                gitlab.invalidateCache();
+            }
+            GitLabExporter.Options options = GitLabExporter.Options.defaults()
+                                                                   .withConcurrency(concurrency)
+                                                                   .withPageSize(pageSize)
+                                                                   .withFullDiffs(fullDiffs)
+                                                                   // a daemon refreshes what changed since its last crawl
+                                                                   .withIncremental(incremental || (daemon && !graphQL))
+                                                                   // only the windows of the report definitions are fixed
+                                                                   .withRelativeWindow(reports.isEmpty());
+            List<String> crawledTeam = team;
+            int crawledSize = size;
+            exporters = (windowFrom, windowTo) -> graphQL
+                    ? new GitLabGraphQLExporter(gitlab, crawledTeam, crawledSize, List.of("1389"), OUTPUT_FILE, windowFrom, windowTo, options)
+                    : new GitLabExporter(gitlab,
+                                         crawledTeam,
+                                         crawledSize,
+                                         List.of("1389"),
+                                         OUTPUT_FILE,
+                                         windowFrom,
+                                         windowTo,
+                                         clock,
+                                         options);
         }
 
+        if (daemon) {
+            // the window slides with every refresh; a backup holds whatever its crawl covered, it is cut to the window
+            InsightServer server = new InsightServer(
+                    bindAddress,
+                    port,
+                    () -> {
+                        Instant refreshedAt = clock.instant();
+                        return exporters.apply(windowFrom(refreshedAt), windowTo(refreshedAt))
+                                        .within(windowFrom(refreshedAt), windowTo(refreshedAt));
+                    },
+                    refreshInterval,
+                    clock);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+            server.start();
+            return;
+        }
+        CodeReviewDataExporter exporter = exporters.apply(from, to);
 
+        if (!reports.isEmpty()) {
+            Map<ReportDefinition, Function<CodeReviewDataExporter.MergeRequest, Optional<CodeReviewDataExporter.MergeRequest>>> subsets =
+                    new LinkedHashMap<>();
+            reports.forEach(report -> subsets.put(report, report::select));
+            CodeReviewInsightService.bySubset(exporter.streamMergeRequests(), subsets, CodeReviewInsightService.DEFAULT_TOP_K)
+                                    .forEach((report, insights) -> new MarkdownReport(new File(report.output()), insights).generateReport());
+            return;
+        }
 
-
-        CodeReviewInsightService codeReviewInsightService = new CodeReviewInsightService(exporter);
+        CodeReviewInsightService codeReviewInsightService = parallel
+                ? new CodeReviewInsightService(exporter.getMergeRequests(), ForkJoinPool.commonPool())
+                : new CodeReviewInsightService(exporter);
 
         MarkdownReport markdownReport = new MarkdownReport(new File("output/report_%s_%s-%s.md".formatted(Instant.now().toString(), from, to)), codeReviewInsightService);
         markdownReport.generateReport();
+        codeReviewInsightService.getRollups().write(Path.of(ROLLUPS_FILE));
+    }
+
+    private static CodeReviewDataExporter fromBackup(boolean lazyCommentBodies) {
+        return DataExporterFromSnapshot.ofBackup(new File(OUTPUT_FILE), new File(SNAPSHOT_FILE), lazyCommentBodies);
+    }
+
+    private static InetAddress inetAddress(String host) {
+        try {
+            return InetAddress.getByName(host);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("unknown bind address " + host, e);
+        }
+    }
+
+    private static Instant windowFrom(Instant now) {
+        return now.atZone(ZoneId.of("UTC")).minusMonths(12).toInstant();
+    }
+
+    private static Instant windowTo(Instant now) {
+        return now.atZone(ZoneId.of("UTC")).minusMonths(6).toInstant();
     }
 
 }
@@ -2,11 +2,50 @@ package antessio;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import antessio.classification.CommentCategory;
 
 public interface CodeReviewDataExporter {
 
     List<MergeRequest> getMergeRequests();
 
+    /**
+     * Merge requests one at a time; exporters backed by a file can override it to avoid loading everything.
+     */
+    default Stream<MergeRequest> streamMergeRequests() {
+        return getMergeRequests().stream();
+    }
+
+    /**
+     * The merge requests of this exporter created in {@code [from, to)}, e.g. the window of a backup crawled over a
+     * wider one.
+     */
+    default CodeReviewDataExporter within(Instant from, Instant to) {
+        CodeReviewDataExporter exporter = this;
+        return new CodeReviewDataExporter() {
+
+            @Override
+            public List<MergeRequest> getMergeRequests() {
+                return exporter.getMergeRequests().stream().filter(this::isInWindow).toList();
+            }
+
+            @Override
+            public Stream<MergeRequest> streamMergeRequests() {
+                return exporter.streamMergeRequests().filter(this::isInWindow);
+            }
+
+            private boolean isInWindow(MergeRequest mr) {
+                return !mr.createdAt().isBefore(from) && mr.createdAt().isBefore(to);
+            }
+
+        };
+    }
+
 
     record Project(String id, String name, String url) {
 
@@ -16,10 +55,68 @@ public interface CodeReviewDataExporter {
 
     }
 
-    record Comment(String author, String body, Instant createdAt) {
+    /**
+     * A comment body kept out of the heap, read only when it is needed.
+     */
+    interface LazyBody {
+
+        String text();
+
+        /**
+         * The utf-8 bytes of the body, one char per byte: enough to look for ascii markers without decoding it.
+         */
+        CharSequence raw();
+
+    }
+
+    /**
+     * {@code categories} are set by the exporter, they are {@code null} for comments never classified; being derived
+     * from the body they take no part in equality. With a {@code lazyBody}, the body is not held by the comment but
+     * read from it on access.
+     */
+    record Comment(String author, String body, Instant createdAt, Set<CommentCategory> categories, @JsonIgnore LazyBody lazyBody) {
+
+        public Comment(String author, String body, Instant createdAt) {
+            this(author, body, createdAt, null, null);
+        }
+
+        public Comment withCategories(Set<CommentCategory> categories) {
+            return new Comment(author, body, createdAt, categories, lazyBody);
+        }
+
+        @Override
+        public String body() {
+            return lazyBody == null ? body : lazyBody.text();
+        }
+
+        public CharSequence rawBody() {
+            return lazyBody == null ? body : lazyBody.raw();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Comment other
+                   && Objects.equals(author, other.author)
+                   && Objects.equals(body(), other.body())
+                   && Objects.equals(createdAt, other.createdAt);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(author, body(), createdAt);
+        }
+
+        @Override
+        public String toString() {
+            return "Comment[author=%s, body=%s, createdAt=%s, categories=%s]".formatted(author, body(), createdAt, categories);
+        }
 
     }
 
+    /**
+     * {@code changes} is the number of changed files; {@code linesAdded} and {@code linesRemoved} are only known
+     * when the diffs were fetched, {@code null} otherwise.
+     */
     record MergeRequest(String id,
                                String title,
                                String webUrl,
@@ -29,7 +126,26 @@ public interface CodeReviewDataExporter {
                                Integer changes,
                                List<Approval> approvals,
                         List<Comment> comments,
-                        Project project) {
+                        Project project,
+                        Integer linesAdded,
+                        Integer linesRemoved) {
+
+        public MergeRequest(String id,
+                            String title,
+                            String webUrl,
+                            String author,
+                            Instant createdAt,
+                            Instant mergedAt,
+                            Integer changes,
+                            List<Approval> approvals,
+                            List<Comment> comments,
+                            Project project) {
+            this(id, title, webUrl, author, createdAt, mergedAt, changes, approvals, comments, project, null, null);
+        }
+
+        public MergeRequest withComments(List<Comment> comments) {
+            return new MergeRequest(id, title, webUrl, author, createdAt, mergedAt, changes, approvals, comments, project, linesAdded, linesRemoved);
+        }
 
     }
 
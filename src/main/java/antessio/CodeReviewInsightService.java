@@ -1,173 +1,135 @@
 package antessio;
 
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.Date;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
-import antessio.common.DateUtils;
-import antessio.gitlab.GitLabExporter;
+import antessio.classification.CommentCategory;
+import antessio.common.QuantileSketch;
+import antessio.rollup.Rollups;
 
 public class CodeReviewInsightService{
 
-    private final List<Contributor> topContributors = new ArrayList<>();
-    private final List<Commenter> topCommenters = new ArrayList<>();
-    private final List<Approver> topApprovers = new ArrayList<>();
-    private final List<HotMr> hottestMrs = new ArrayList<>();
-    private final List<LongMr> longestMr = new ArrayList<>();
-    private final List<BigMr> biggestMrs = new ArrayList<>();
-    private final AtomicInteger averageMergeRequestsDurationInHours = new AtomicInteger(0);
-    private final AtomicInteger averageTimeToFirstCommentInHours = new AtomicInteger(0);
-    private final AtomicReference<Double> averageCountOfNitComments = new AtomicReference<Double>(0d);
-
-    private final AtomicLong timesFirstCommentWasNit = new AtomicLong(0);
-    private final List<CodeReviewDataExporter.MergeRequest> mergeRequests;
+    /**
+     * Rows kept in each merge request ranking (hottest, longest, biggest) when no cut-off is given.
+     */
+    public static final int DEFAULT_TOP_K = 10;
+
+    private final List<Contributor> topContributors;
+    private final List<Commenter> topCommenters;
+    private final List<Approver> topApprovers;
+    private final List<HotMr> hottestMrs;
+    private final List<LongMr> longestMr;
+    private final List<BigMr> biggestMrs;
+    private final int topK;
+    private final int averageMergeRequestsDurationInHours;
+    private final int averageTimeToFirstCommentInHours;
+    private final double averageCountOfNitComments;
+    private final Percentiles mergeRequestsDurationPercentiles;
+    private final Percentiles timeToFirstCommentPercentiles;
+
+    private final long timesFirstCommentWasNit;
+    private final Map<CommentCategory, Long> commentsByCategory;
+    private final Map<CommentCategory, Long> firstCommentsByCategory;
+    private final int mergeRequestsCount;
+    private final Instant mergeRequestsFrom;
+    private final Rollups rollups;
 
 
     public CodeReviewInsightService(CodeReviewDataExporter codeReviewDataExporter) {
-        mergeRequests = codeReviewDataExporter.getMergeRequests();
-        init();
-    }
-
-    private void init() {
-        Map<String, List<GitLabExporter.MergeRequest>> approvedMRByUser = new HashMap<>();
-        Map<String, Map<GitLabExporter.MergeRequest, List<GitLabExporter.Comment>>> discussionsOnMRByUser = new HashMap<>();
-        Map<GitLabExporter.MergeRequest, Integer> firstCommentByMergeRequest = new HashMap<>();
-        Map<GitLabExporter.MergeRequest, Integer> nitByMergeRequest = new HashMap<>();
-        Map<GitLabExporter.MergeRequest, Integer> durationInHoursByMergeRequest = new HashMap<>();
-
-        mergeRequests
-                .forEach(mr -> {
-                    // process comments
-                    AtomicInteger commentCount = new AtomicInteger();
-                    nitByMergeRequest.put(mr, 0);
-                    AtomicReference<CodeReviewDataExporter.Comment> firstComment = new AtomicReference<>(null);
-                    Map<String, CodeReviewDataExporter.Comment> firstCommentByAuthor = new HashMap<>();
-                    mr
-                            .comments()
-                            .stream()
-                            .sorted(Comparator.comparing(CodeReviewDataExporter.Comment::createdAt))
-                            .forEach(n -> {
-                                commentCount.addAndGet(1);
-                                String commentAuthor = n.author();
-                                if (!discussionsOnMRByUser.containsKey(commentAuthor)) {
-                                    Map<GitLabExporter.MergeRequest, List<GitLabExporter.Comment>> commentsOnMr = new HashMap<>();
-                                    commentsOnMr.put(mr, new ArrayList<>());
-                                    discussionsOnMRByUser.put(commentAuthor, commentsOnMr);
-                                } else if (!discussionsOnMRByUser.get(commentAuthor).containsKey(mr)) {
-                                    discussionsOnMRByUser.get(commentAuthor)
-                                                         .put(mr, new ArrayList<>());
-                                }
-
-                                discussionsOnMRByUser
-                                        .get(commentAuthor)
-                                        .get(mr)
-                                        .add(n);
-
-                                Instant commentDate = n.createdAt();
-                                if (!firstCommentByAuthor.containsKey(n.author())) {
-                                    firstCommentByAuthor.put(n.author(), n);
-                                }
-                                if (firstComment.get() == null || firstComment.get().createdAt().isAfter(commentDate)) {
-                                    firstComment.set(n);
-                                }
-                                if (isNitComment(n)) {
-                                    int newCount = nitByMergeRequest.get(mr) + 1;
-                                    nitByMergeRequest.put(mr, newCount);
-                                }
-
-
-                            });
-                    if (firstComment.get()!=null) {
-                        int firstCommentDuration = DateUtils.timeDiff(Date.from(firstComment.get().createdAt()), Date.from(mr.createdAt()), TimeUnit.MINUTES);
-                        firstCommentByMergeRequest.put(mr, firstCommentDuration);
-                    }
-                    timesFirstCommentWasNit.addAndGet(firstCommentByAuthor.values()
-                                                                    .stream()
-                                                                    .filter(CodeReviewInsightService::isNitComment)
-                                                                    .count());
-                    // process mr data
-                    hottestMrs.add(new HotMr(mr.id(), mr.title(), mr.author(), commentCount.get(), mr.webUrl()));
-                    biggestMrs.add(new BigMr(mr.id(), mr.title(), mr.author(), mr.changes(), mr.webUrl()));
-                    Optional.ofNullable(mr.mergedAt())
-                            .ifPresent(mergedAt -> {
-                                int mrDuration = DateUtils.timeDiff(Date.from(mergedAt), Date.from(mr.createdAt()), TimeUnit.MINUTES);
-                                longestMr.add(new LongMr(mr.id(), mr.title(), mr.author(), mrDuration, mr.webUrl()));
-                                durationInHoursByMergeRequest.put(mr, mrDuration);
-                            });
-                    updateApprovalsIfApproved(mr, approvedMRByUser);
-
-                });
-        averageMergeRequestsDurationInHours.set(durationInHoursByMergeRequest.values().stream().reduce(0, Integer::sum) / durationInHoursByMergeRequest.size());
-        averageCountOfNitComments.set(((double)nitByMergeRequest.values().stream().reduce(0, Integer::sum)) / ((double)nitByMergeRequest.size()));
-        averageTimeToFirstCommentInHours.set(firstCommentByMergeRequest.values().stream().reduce(0, Integer::sum) / firstCommentByMergeRequest.size());
-        calculateTopContributors(approvedMRByUser, discussionsOnMRByUser);
-        calculateTopApprovers(approvedMRByUser);
-        calculateTopCommenters(discussionsOnMRByUser);
-    }
-
-    private static boolean isNitComment(CodeReviewDataExporter.Comment n) {
-        return n.body().contains("NIT");
-    }
-
-
-    private void calculateTopCommenters(Map<String, Map<GitLabExporter.MergeRequest, List<GitLabExporter.Comment>>> discussionsOnMRByUser) {
-        discussionsOnMRByUser
-                .entrySet()
-                .stream()
-                .flatMap(e -> e.getValue()
-                               .entrySet()
-                               .stream()
-                               .flatMap(e2 -> e2.getValue().stream())
-                               .map(GitLabExporter.Comment::author))
-                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()))
-                .forEach((key, value) -> topCommenters.add(new Commenter(key, Math.toIntExact(value))));
-    }
-
-    private void calculateTopApprovers(Map<String, List<GitLabExporter.MergeRequest>> approvedMRByUser) {
-        approvedMRByUser
-                .forEach((key, value) -> topApprovers.add(new Approver(key, value.size())));
-    }
-
-    private void calculateTopContributors(
-            Map<String, List<GitLabExporter.MergeRequest>> approvedMRByUser,
-            Map<String, Map<GitLabExporter.MergeRequest, List<GitLabExporter.Comment>>> discussionsOnMRByUser) {
-        Stream.concat(
-                      approvedMRByUser.keySet().stream(),
-                      discussionsOnMRByUser.entrySet()
-                                           .stream()
-                                           .flatMap(e -> e.getValue()
-                                                          .entrySet()
-                                                          .stream()
-                                                          .flatMap(e2 -> e2.getValue()
-                                                                           .stream())
-                                                          .map(GitLabExporter.Comment::author)))
-              .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()))
-              .forEach((key, value) -> topContributors.add(new Contributor(key, value)));
-    }
-
-    private void updateApprovalsIfApproved(GitLabExporter.MergeRequest mr, Map<String, List<GitLabExporter.MergeRequest>> approvedMRByUser) {
-        mr.approvals()
-          .stream()
-          .map(GitLabExporter.Approval::username)
-          .forEach(approvalUsername -> {
-              List<GitLabExporter.MergeRequest> mergeRequestsApproved = Optional.ofNullable(approvedMRByUser.get(approvalUsername))
-                                                                                .orElseGet(ArrayList::new);
-              mergeRequestsApproved.add(mr);
-              approvedMRByUser.put(approvalUsername, mergeRequestsApproved);
-          });
+        this(codeReviewDataExporter, DEFAULT_TOP_K);
+    }
+
+    public CodeReviewInsightService(CodeReviewDataExporter codeReviewDataExporter, int topK) {
+        this(accumulate(codeReviewDataExporter::streamMergeRequests, topK), topK);
+    }
+
+    /**
+     * Computes the insights in a single pass over the merge requests, holding only per-user counters and the
+     * top {@code topK} merge requests of each ranking in memory.
+     */
+    public CodeReviewInsightService(Stream<CodeReviewDataExporter.MergeRequest> mergeRequests, int topK) {
+        this(accumulate(() -> mergeRequests, topK), topK);
+    }
+
+    public CodeReviewInsightService(Stream<CodeReviewDataExporter.MergeRequest> mergeRequests) {
+        this(mergeRequests, DEFAULT_TOP_K);
+    }
+
+    /**
+     * Computes the insights on {@code pool}, splitting the merge requests across its workers; the result is
+     * the same as the sequential computation.
+     */
+    public CodeReviewInsightService(List<CodeReviewDataExporter.MergeRequest> mergeRequests, ForkJoinPool pool, int topK) {
+        this(pool.invoke(new InsightTask(mergeRequests, topK)), topK);
+    }
+
+    public CodeReviewInsightService(List<CodeReviewDataExporter.MergeRequest> mergeRequests, ForkJoinPool pool) {
+        this(mergeRequests, pool, DEFAULT_TOP_K);
+    }
+
+    private CodeReviewInsightService(InsightAccumulator accumulator, int topK) {
+        this.topK = topK;
+        topContributors = accumulator.topContributors();
+        topCommenters = accumulator.topCommenters();
+        topApprovers = accumulator.topApprovers();
+        hottestMrs = accumulator.hottestMrs();
+        longestMr = accumulator.longestMrs();
+        biggestMrs = accumulator.biggestMrs();
+        averageMergeRequestsDurationInHours = accumulator.averageMergeRequestsDurationInHours();
+        averageTimeToFirstCommentInHours = accumulator.averageTimeToFirstCommentInHours();
+        averageCountOfNitComments = accumulator.averageCountOfNitComments();
+        mergeRequestsDurationPercentiles = accumulator.mergeRequestsDurationPercentiles();
+        timeToFirstCommentPercentiles = accumulator.timeToFirstCommentPercentiles();
+        timesFirstCommentWasNit = accumulator.timesFirstCommentWasNit();
+        commentsByCategory = accumulator.commentsByCategory();
+        firstCommentsByCategory = accumulator.firstCommentsByCategory();
+        mergeRequestsCount = accumulator.mergeRequestsCount();
+        mergeRequestsFrom = accumulator.mergeRequestsFrom();
+        rollups = accumulator.rollups();
+    }
+
+    /**
+     * The insights of several subsets of the merge requests, computed in a single pass: each merge request is
+     * folded into every subset it belongs to, as that subset sees it, e.g. with only some of its comments. The result
+     * follows the order of {@code subsets}.
+     */
+    public static <K> Map<K, CodeReviewInsightService> bySubset(
+            Stream<CodeReviewDataExporter.MergeRequest> mergeRequests,
+            Map<K, Function<CodeReviewDataExporter.MergeRequest, Optional<CodeReviewDataExporter.MergeRequest>>> subsets,
+            int topK) {
+        List<Map.Entry<K, Function<CodeReviewDataExporter.MergeRequest, Optional<CodeReviewDataExporter.MergeRequest>>>> views =
+                List.copyOf(subsets.entrySet());
+        InsightAccumulator[] accumulators = new InsightAccumulator[views.size()];
+        for (int i = 0; i < accumulators.length; i++) {
+            accumulators[i] = new InsightAccumulator(topK);
+        }
+        try (mergeRequests) {
+            mergeRequests.forEach(mr -> {
+                for (int i = 0; i < accumulators.length; i++) {
+                    views.get(i).getValue().apply(mr).ifPresent(accumulators[i]::accept);
+                }
+            });
+        }
+        Map<K, CodeReviewInsightService> insights = new LinkedHashMap<>();
+        for (int i = 0; i < accumulators.length; i++) {
+            insights.put(views.get(i).getKey(), new CodeReviewInsightService(accumulators[i], topK));
+        }
+        return insights;
+    }
 
+    private static InsightAccumulator accumulate(Supplier<Stream<CodeReviewDataExporter.MergeRequest>> mergeRequests, int topK) {
+        InsightAccumulator accumulator = new InsightAccumulator(topK);
+        try (Stream<CodeReviewDataExporter.MergeRequest> stream = mergeRequests.get()) {
+            stream.forEach(accumulator::accept);
+        }
+        return accumulator;
     }
 
     public List<Contributor> getTopContributors() {
@@ -182,6 +144,14 @@ public class CodeReviewInsightService{
         return topApprovers;
     }
 
+    /**
+     * Cut-off of the merge request rankings: {@link #getHottestMrs()}, {@link #getLongestMrs()} and
+     * {@link #getBiggestMRs()} hold at most this many rows, greatest first.
+     */
+    public int getTopK() {
+        return topK;
+    }
+
     public List<HotMr> getHottestMrs() {
         return hottestMrs;
     }
@@ -194,27 +164,68 @@ public class CodeReviewInsightService{
         return biggestMrs;
     }
 
-    public AtomicInteger getAverageMergeRequestsDurationInHours() {
+    public int getAverageMergeRequestsDurationInHours() {
         return averageMergeRequestsDurationInHours;
     }
 
-    public AtomicInteger getAverageTimeToFirstCommentInHours() {
+    public int getAverageTimeToFirstCommentInHours() {
         return averageTimeToFirstCommentInHours;
     }
 
-    public AtomicReference<Double> getCountNitComments() {
+    /**
+     * Percentiles of the duration of the merged merge requests, in minutes; unlike the average they are not pulled
+     * up by a few merge requests left open for months.
+     */
+    public Percentiles getMergeRequestsDurationPercentiles() {
+        return mergeRequestsDurationPercentiles;
+    }
+
+    public Percentiles getTimeToFirstCommentPercentiles() {
+        return timeToFirstCommentPercentiles;
+    }
+
+    public double getCountNitComments() {
         return averageCountOfNitComments;
     }
 
-    public AtomicLong getTimesFirstCommentWasNit() {
+    public long getTimesFirstCommentWasNit() {
         return timesFirstCommentWasNit;
     }
 
+    public Map<CommentCategory, Long> getCommentsByCategory() {
+        return commentsByCategory;
+    }
+
+    /**
+     * For each category, how many times the first comment of a user on a merge request was of that category.
+     */
+    public Map<CommentCategory, Long> getFirstCommentsByCategory() {
+        return firstCommentsByCategory;
+    }
+
+    /**
+     * Weekly and monthly aggregates of the same merge requests, for trends and sub-windows.
+     */
+    public Rollups getRollups() {
+        return rollups;
+    }
+
     public int mergeRequestsCount(){
-        return this.mergeRequests.size();
+        return this.mergeRequestsCount;
     }
     public Instant mergeRequestsFrom(){
-        return this.mergeRequests.stream().map(CodeReviewDataExporter.MergeRequest::createdAt).min(Comparator.naturalOrder()).orElse(null);
+        return this.mergeRequestsFrom;
+    }
+
+    /**
+     * Values within {@link QuantileSketch#DEFAULT_RELATIVE_ACCURACY} of the exact percentiles.
+     */
+    public record Percentiles(long p50, long p90, long p99) {
+
+        public static Percentiles of(QuantileSketch sketch) {
+            return new Percentiles(sketch.quantile(0.5), sketch.quantile(0.9), sketch.quantile(0.99));
+        }
+
     }
 
     public record Contributor(String name, Long contributes) {
@@ -237,7 +248,10 @@ public class CodeReviewInsightService{
 
     }
 
-    public record BigMr(String id, String title, String author, Integer changes, String link) {
+    /**
+     * Ranked by changed files; the lines are {@code null} unless the diffs were fetched.
+     */
+    public record BigMr(String id, String title, String author, Integer changes, String link, Integer linesAdded, Integer linesRemoved) {
 
     }
 
@@ -1,42 +1,56 @@
 package antessio;
 
-import static antessio.common.FileUtils.readFileAsString;
-
 import java.io.File;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
+import antessio.common.JsonConverter;
 import antessio.common.ObjectMapperJsonConverter;
 
 public class DataExporterFromBackup implements CodeReviewDataExporter{
 
     private final String filename;
-    private final ObjectMapperJsonConverter jsonConverter;
-    private List<MergeRequest> mergeRequests = new ArrayList<>();
+    private final JsonConverter jsonConverter;
+    private List<MergeRequest> mergeRequests;
 
     public DataExporterFromBackup(String filename) {
         this.filename = filename;
         this.jsonConverter = new ObjectMapperJsonConverter();
-        this.initFromBackup();
     }
     public DataExporterFromBackup(File file) {
         this.filename = file.getAbsolutePath();
         this.jsonConverter = new ObjectMapperJsonConverter();
-        this.initFromBackup();
     }
 
     @Override
     public List<MergeRequest> getMergeRequests() {
+        if (mergeRequests == null) {
+            initFromBackup();
+        }
         return mergeRequests;
     }
 
+    /**
+     * Reads the backup one merge request at a time, without materialising it; the stream must be closed.
+     */
+    @Override
+    public Stream<MergeRequest> streamMergeRequests() {
+        if (mergeRequests != null) {
+            return mergeRequests.stream();
+        }
+        return jsonConverter.fromJsonArray(Path.of(filename), MergeRequest.class);
+    }
+
     public void initFromBackup() {
-        try {
-            String content = readFileAsString(filename);
-            mergeRequests.addAll(List.of(jsonConverter.fromJson(content, MergeRequest[].class)));
+        List<MergeRequest> loaded = new ArrayList<>();
+        try (Stream<MergeRequest> stream = jsonConverter.fromJsonArray(Path.of(filename), MergeRequest.class)) {
+            stream.forEach(loaded::add);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
+        mergeRequests = loaded;
     }
 
 }
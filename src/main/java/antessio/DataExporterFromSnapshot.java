@@ -0,0 +1,73 @@
+package antessio;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import antessio.snapshot.Snapshot;
+import antessio.snapshot.SnapshotConverter;
+
+/**
+ * Reads merge requests from a memory-mapped {@link Snapshot}; with {@code lazyCommentBodies} the comment bodies stay
+ * in the mapped file instead of the heap.
+ */
+public class DataExporterFromSnapshot implements CodeReviewDataExporter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DataExporterFromSnapshot.class);
+
+    private final Snapshot snapshot;
+    private List<MergeRequest> mergeRequests;
+
+    public DataExporterFromSnapshot(Path file) {
+        this(file, false);
+    }
+
+    public DataExporterFromSnapshot(Path file, boolean lazyCommentBodies) {
+        this.snapshot = Snapshot.open(file, lazyCommentBodies);
+    }
+
+    /**
+     * Reads the json {@code backup} through its {@code snapshot}, converting it first when the snapshot is missing or
+     * older than the backup. A backup too large for a snapshot is read from the json, and converted again next
+     * time. Without a backup, the snapshot alone is read.
+     */
+    public static CodeReviewDataExporter ofBackup(File backup, File snapshot, boolean lazyCommentBodies) {
+        return ofBackup(backup, snapshot, lazyCommentBodies, Long.MAX_VALUE);
+    }
+
+    static CodeReviewDataExporter ofBackup(File backup, File snapshot, boolean lazyCommentBodies, long maxSnapshotSize) {
+        boolean upToDate = snapshot.exists() && (!backup.exists() || snapshot.lastModified() >= backup.lastModified());
+        if (!upToDate) {
+            if (!backup.exists()) {
+                throw new IllegalArgumentException("no backup found");
+            }
+            // converted once, later report-only runs map the snapshot
+            if (!SnapshotConverter.jsonToSnapshot(backup.toPath(), snapshot.toPath(), maxSnapshotSize)) {
+                LOGGER.warn("{} is too large for a snapshot, reading it as json", backup);
+                return new DataExporterFromBackup(backup);
+            }
+        }
+        return new DataExporterFromSnapshot(snapshot.toPath(), lazyCommentBodies);
+    }
+
+    @Override
+    public List<MergeRequest> getMergeRequests() {
+        if (mergeRequests == null) {
+            mergeRequests = snapshot.stream().toList();
+        }
+        return mergeRequests;
+    }
+
+    @Override
+    public Stream<MergeRequest> streamMergeRequests() {
+        if (mergeRequests != null) {
+            return mergeRequests.stream();
+        }
+        return snapshot.stream();
+    }
+
+}
@@ -0,0 +1,270 @@
+package antessio;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import antessio.classification.CommentCategory;
+import antessio.classification.CommentClassifier;
+import antessio.common.DateUtils;
+import antessio.common.IntCounters;
+import antessio.common.Interner;
+import antessio.common.QuantileSketch;
+import antessio.common.TopK;
+import antessio.rollup.Rollups;
+
+/**
+ * Single pass aggregation of the code review insights: merge requests are folded in one at a time and only
+ * counters are kept, never the comments themselves. Users are interned to dense ids so per-user counters are
+ * plain int arrays.
+ */
+class InsightAccumulator {
+
+    private static final CommentCategory[] CATEGORIES = CommentCategory.values();
+    private static final CommentClassifier CLASSIFIER = CommentClassifier.defaults();
+
+    private final Interner users = new Interner();
+    private final IntCounters commentsByUser = new IntCounters();
+    private final IntCounters approvalsByUser = new IntCounters();
+    // scratch space reused across merge requests: earliest comment of each user on the current merge request
+    private CodeReviewDataExporter.Comment[] firstCommentByUser = new CodeReviewDataExporter.Comment[16];
+    private int[] firstCommentCategoriesByUser = new int[16];
+    private int[] usersCommentingOnMr = new int[16];
+    private final TopK<CodeReviewInsightService.HotMr> hottestMrs;
+    private final TopK<CodeReviewInsightService.LongMr> longestMrs;
+    private final TopK<CodeReviewInsightService.BigMr> biggestMrs;
+    private int mergeRequestsCount;
+    private Instant mergeRequestsFrom;
+    private long durationSum;
+    private int durationCount;
+    private long firstCommentDurationSum;
+    private int firstCommentDurationCount;
+    // indexed by category ordinal: comments of the category, and first comments of a user on a merge request
+    private final long[] commentsByCategory = new long[CATEGORIES.length];
+    private final long[] firstCommentsByCategory = new long[CATEGORIES.length];
+    private final QuantileSketch durationQuantiles = new QuantileSketch();
+    private final QuantileSketch firstCommentDurationQuantiles = new QuantileSketch();
+    private final Rollups rollups = new Rollups();
+
+    InsightAccumulator(int topK) {
+        hottestMrs = new TopK<>(topK, Comparator.comparing(CodeReviewInsightService.HotMr::interactions));
+        longestMrs = new TopK<>(topK, Comparator.comparing(CodeReviewInsightService.LongMr::durationInHours));
+        biggestMrs = new TopK<>(topK, Comparator.comparing(CodeReviewInsightService.BigMr::changes));
+    }
+
+    void accept(CodeReviewDataExporter.MergeRequest mr) {
+        // position of the merge request in the stream, it breaks ties in the rankings
+        long sequence = mergeRequestsCount;
+        mergeRequestsCount++;
+        if (mergeRequestsFrom == null || mr.createdAt().isBefore(mergeRequestsFrom)) {
+            mergeRequestsFrom = mr.createdAt();
+        }
+        // process comments
+        int commentCount = 0;
+        int nitComments = 0;
+        int commentingUsers = 0;
+        CodeReviewDataExporter.Comment firstComment = null;
+        for (CodeReviewDataExporter.Comment comment : mr.comments()) {
+            commentCount++;
+            int user = users.intern(comment.author());
+            commentsByUser.increment(user);
+            // classified once, the first comment of the user keeps its categories along
+            int categories = CommentCategory.mask(CLASSIFIER.categoriesOf(comment));
+            if (user >= firstCommentByUser.length) {
+                int length = Math.max(user + 1, firstCommentByUser.length * 2);
+                firstCommentByUser = Arrays.copyOf(firstCommentByUser, length);
+                firstCommentCategoriesByUser = Arrays.copyOf(firstCommentCategoriesByUser, length);
+            }
+            if (firstCommentByUser[user] == null) {
+                if (commentingUsers == usersCommentingOnMr.length) {
+                    usersCommentingOnMr = Arrays.copyOf(usersCommentingOnMr, commentingUsers * 2);
+                }
+                usersCommentingOnMr[commentingUsers++] = user;
+                firstCommentByUser[user] = comment;
+                firstCommentCategoriesByUser[user] = categories;
+            } else if (earliest(firstCommentByUser[user], comment) == comment) {
+                firstCommentByUser[user] = comment;
+                firstCommentCategoriesByUser[user] = categories;
+            }
+            firstComment = firstComment == null ? comment : earliest(firstComment, comment);
+            count(categories, commentsByCategory);
+            if ((categories & CommentCategory.NIT.bit()) != 0) {
+                nitComments++;
+            }
+        }
+        Integer firstCommentDuration = null;
+        if (firstComment != null) {
+            firstCommentDuration = DateUtils.timeDiff(Date.from(firstComment.createdAt()), Date.from(mr.createdAt()), TimeUnit.MINUTES);
+            firstCommentDurationSum += firstCommentDuration;
+            firstCommentDurationCount++;
+            firstCommentDurationQuantiles.add(firstCommentDuration);
+        }
+        for (int i = 0; i < commentingUsers; i++) {
+            int user = usersCommentingOnMr[i];
+            count(firstCommentCategoriesByUser[user], firstCommentsByCategory);
+            firstCommentByUser[user] = null;
+        }
+        // process mr data
+        hottestMrs.add(new CodeReviewInsightService.HotMr(mr.id(), mr.title(), mr.author(), commentCount, mr.webUrl()), sequence);
+        biggestMrs.add(new CodeReviewInsightService.BigMr(mr.id(), mr.title(), mr.author(), mr.changes(), mr.webUrl(), mr.linesAdded(), mr.linesRemoved()), sequence);
+        Integer mrDuration = null;
+        if (mr.mergedAt() != null) {
+            mrDuration = DateUtils.timeDiff(Date.from(mr.mergedAt()), Date.from(mr.createdAt()), TimeUnit.MINUTES);
+            longestMrs.add(new CodeReviewInsightService.LongMr(mr.id(), mr.title(), mr.author(), mrDuration, mr.webUrl()), sequence);
+            durationSum += mrDuration;
+            durationCount++;
+            durationQuantiles.add(mrDuration);
+        }
+        rollups.accept(mr.createdAt(), mrDuration, firstCommentDuration, nitComments);
+        mr.approvals()
+          .forEach(approval -> approvalsByUser.increment(users.intern(approval.username())));
+    }
+
+    /**
+     * Folds the aggregates of {@code other}, computed over the merge requests that follow the ones of this
+     * accumulator, into this one. The result is the same as accepting all merge requests in order on a single
+     * accumulator, including the first-seen order of users and the order of the merge request rows.
+     */
+    InsightAccumulator combine(InsightAccumulator other) {
+        for (int otherUser = 0; otherUser < other.users.size(); otherUser++) {
+            int user = users.intern(other.users.value(otherUser));
+            commentsByUser.add(user, other.commentsByUser.get(otherUser));
+            approvalsByUser.add(user, other.approvalsByUser.get(otherUser));
+        }
+        hottestMrs.addAll(other.hottestMrs, mergeRequestsCount);
+        longestMrs.addAll(other.longestMrs, mergeRequestsCount);
+        biggestMrs.addAll(other.biggestMrs, mergeRequestsCount);
+        mergeRequestsCount += other.mergeRequestsCount;
+        if (mergeRequestsFrom == null || (other.mergeRequestsFrom != null && other.mergeRequestsFrom.isBefore(mergeRequestsFrom))) {
+            mergeRequestsFrom = other.mergeRequestsFrom;
+        }
+        durationSum += other.durationSum;
+        durationCount += other.durationCount;
+        firstCommentDurationSum += other.firstCommentDurationSum;
+        firstCommentDurationCount += other.firstCommentDurationCount;
+        durationQuantiles.merge(other.durationQuantiles);
+        firstCommentDurationQuantiles.merge(other.firstCommentDurationQuantiles);
+        for (int category = 0; category < CATEGORIES.length; category++) {
+            commentsByCategory[category] += other.commentsByCategory[category];
+            firstCommentsByCategory[category] += other.firstCommentsByCategory[category];
+        }
+        rollups.combine(other.rollups);
+        return this;
+    }
+
+    /**
+     * On equal timestamps the comment seen first wins, as a stable sort by creation date would do.
+     */
+    private static CodeReviewDataExporter.Comment earliest(CodeReviewDataExporter.Comment current, CodeReviewDataExporter.Comment candidate) {
+        return candidate.createdAt().isBefore(current.createdAt()) ? candidate : current;
+    }
+
+    private static void count(int categories, long[] counters) {
+        for (CommentCategory category : CATEGORIES) {
+            if ((categories & category.bit()) != 0) {
+                counters[category.ordinal()]++;
+            }
+        }
+    }
+
+    List<CodeReviewInsightService.Contributor> topContributors() {
+        // approving counts once per approver, each comment counts once
+        List<CodeReviewInsightService.Contributor> contributors = new ArrayList<>();
+        for (int user = 0; user < users.size(); user++) {
+            long contributes = commentsByUser.get(user) + (approvalsByUser.get(user) > 0 ? 1 : 0);
+            contributors.add(new CodeReviewInsightService.Contributor(users.value(user), contributes));
+        }
+        return contributors;
+    }
+
+    List<CodeReviewInsightService.Commenter> topCommenters() {
+        List<CodeReviewInsightService.Commenter> commenters = new ArrayList<>();
+        for (int user = 0; user < users.size(); user++) {
+            if (commentsByUser.get(user) > 0) {
+                commenters.add(new CodeReviewInsightService.Commenter(users.value(user), commentsByUser.get(user)));
+            }
+        }
+        return commenters;
+    }
+
+    List<CodeReviewInsightService.Approver> topApprovers() {
+        List<CodeReviewInsightService.Approver> approvers = new ArrayList<>();
+        for (int user = 0; user < users.size(); user++) {
+            if (approvalsByUser.get(user) > 0) {
+                approvers.add(new CodeReviewInsightService.Approver(users.value(user), approvalsByUser.get(user)));
+            }
+        }
+        return approvers;
+    }
+
+    List<CodeReviewInsightService.HotMr> hottestMrs() {
+        return hottestMrs.toList();
+    }
+
+    List<CodeReviewInsightService.LongMr> longestMrs() {
+        return longestMrs.toList();
+    }
+
+    List<CodeReviewInsightService.BigMr> biggestMrs() {
+        return biggestMrs.toList();
+    }
+
+    int averageMergeRequestsDurationInHours() {
+        return durationCount == 0 ? 0 : (int) (durationSum / durationCount);
+    }
+
+    int averageTimeToFirstCommentInHours() {
+        return firstCommentDurationCount == 0 ? 0 : (int) (firstCommentDurationSum / firstCommentDurationCount);
+    }
+
+    CodeReviewInsightService.Percentiles mergeRequestsDurationPercentiles() {
+        return CodeReviewInsightService.Percentiles.of(durationQuantiles);
+    }
+
+    CodeReviewInsightService.Percentiles timeToFirstCommentPercentiles() {
+        return CodeReviewInsightService.Percentiles.of(firstCommentDurationQuantiles);
+    }
+
+    double averageCountOfNitComments() {
+        return mergeRequestsCount == 0 ? 0d : ((double) commentsByCategory[CommentCategory.NIT.ordinal()]) / ((double) mergeRequestsCount);
+    }
+
+    long timesFirstCommentWasNit() {
+        return firstCommentsByCategory[CommentCategory.NIT.ordinal()];
+    }
+
+    Map<CommentCategory, Long> commentsByCategory() {
+        return byCategory(commentsByCategory);
+    }
+
+    Map<CommentCategory, Long> firstCommentsByCategory() {
+        return byCategory(firstCommentsByCategory);
+    }
+
+    private static Map<CommentCategory, Long> byCategory(long[] counters) {
+        Map<CommentCategory, Long> byCategory = new EnumMap<>(CommentCategory.class);
+        for (CommentCategory category : CATEGORIES) {
+            byCategory.put(category, counters[category.ordinal()]);
+        }
+        return byCategory;
+    }
+
+    Rollups rollups() {
+        return rollups;
+    }
+
+    int mergeRequestsCount() {
+        return mergeRequestsCount;
+    }
+
+    Instant mergeRequestsFrom() {
+        return mergeRequestsFrom;
+    }
+
+}
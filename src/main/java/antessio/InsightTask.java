@@ -0,0 +1,46 @@
+package antessio;
+
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Splits the merge requests in halves until they are small enough, accumulates each slice on its own
+ * {@link InsightAccumulator} and combines the partial results left to right. Workers never share state.
+ */
+class InsightTask extends RecursiveTask<InsightAccumulator> {
+
+    private static final int THRESHOLD = 512;
+
+    private final List<CodeReviewDataExporter.MergeRequest> mergeRequests;
+    private final int topK;
+    private final int from;
+    private final int to;
+
+    InsightTask(List<CodeReviewDataExporter.MergeRequest> mergeRequests, int topK) {
+        this(mergeRequests, topK, 0, mergeRequests.size());
+    }
+
+    private InsightTask(List<CodeReviewDataExporter.MergeRequest> mergeRequests, int topK, int from, int to) {
+        this.mergeRequests = mergeRequests;
+        this.topK = topK;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    protected InsightAccumulator compute() {
+        if (to - from <= THRESHOLD) {
+            InsightAccumulator accumulator = new InsightAccumulator(topK);
+            for (int i = from; i < to; i++) {
+                accumulator.accept(mergeRequests.get(i));
+            }
+            return accumulator;
+        }
+        int middle = (from + to) >>> 1;
+        InsightTask right = new InsightTask(mergeRequests, topK, middle, to);
+        right.fork();
+        InsightAccumulator left = new InsightTask(mergeRequests, topK, from, middle).compute();
+        return left.combine(right.join());
+    }
+
+}
@@ -1,20 +1,27 @@
 package antessio;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.Map;
+import java.util.Optional;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
 
-import antessio.common.FileUtils;
+import antessio.classification.CommentCategory;
+import antessio.common.Template;
+import antessio.rollup.Granularity;
+import antessio.rollup.Rollups;
 
 public class MarkdownReport {
 
+    private static final Template TEMPLATE = Template.load("report_template.md");
+
     public static final String NUMBER_OF_ANALYSED_MERGE_REQUESTS_PLACEHOLDER = "§number_of_analysed_merge_requests";
     public static final String TARGET_DATE_FROM_PLACEHOLDER = "§target_date_from";
     private final File outputFile;
@@ -37,22 +44,38 @@ public class MarkdownReport {
     private final static String LONGEST_MERGE_REQUESTS_TABLE = "| link | title | author | duration in minutes |\n"
                                                                + "|------|-------|--------|-------------------|\n";
     private final static String BIGGEST_MERGE_REQUESTS_TABLE_PLACEHOLDER = "§biggest_merge_requests_table";
-    private final static String BIGGEST_MERGE_REQUESTS_TABLE = "| link | title | author | changes count |\n"
-                                                               + "|------|-------|--------|---------------|\n";
+    private final static String BIGGEST_MERGE_REQUESTS_TABLE = "| link | title | author | changes count | lines added | lines removed |\n"
+                                                               + "|------|-------|--------|---------------|-------------|---------------|\n";
+
+    private final static String COMMENT_CATEGORIES_TABLE_PLACEHOLDER = "§comment_categories_table";
+    private final static String COMMENT_CATEGORIES_TABLE = "| category | comments | first comments |\n"
+                                                           + "|----------|----------|----------------|\n";
+
+    private final static String WEEKLY_TREND_TABLE_PLACEHOLDER = "§weekly_trend_table";
+    private final static String MONTHLY_TREND_TABLE_PLACEHOLDER = "§monthly_trend_table";
+    private final static String TREND_TABLE = "| %s | merge requests | average duration in minutes | p50 duration | p90 duration | average first comment in minutes | p90 first comment | NIT comments | average NIT count |\n"
+                                              + "|------|----------------|-----------------------------|--------------|--------------|----------------------------------|-------------------|--------------|-------------------|\n";
 
     private final static String AVERAGE_DURATION_PLACEHOLDER = "§average_merge_requests_duration";
     private final static String AVERAGE_FIRST_COMMENT_DURATION_PLACEHOLDER = "§average_first_comment_duration";
     private final static String AVERAGE_NIT_COUNT_PLACEHOLDER = "§average_nit_count";
+    private final static String DURATION_PERCENTILES_PLACEHOLDER = "§merge_requests_duration_percentiles";
+    private final static String FIRST_COMMENT_DURATION_PERCENTILES_PLACEHOLDER = "§first_comment_duration_percentiles";
 
     private final static String TIMES_FIRST_COMMENT_WAS_NIT_PLACEHOLDER = "§times_first_comment_was_nit";
     private final Supplier<List<CodeReviewInsightService.Approver>> topApprovers;
     private final Supplier<List<CodeReviewInsightService.HotMr>> hottestMrs;
     private final Supplier<List<CodeReviewInsightService.LongMr>> longestMrs;
     private final Supplier<List<CodeReviewInsightService.BigMr>> biggestMrs;
-    private final Supplier<AtomicInteger> averageMergeRequestsDurationInHours;
-    private final Supplier<AtomicInteger> averageTimeToFirstCommentInHours;
-    private final Supplier<AtomicReference<Double>> countNitComments;
-    private final Supplier<AtomicLong> getTimesFirstCommentWasNit;
+    private final Supplier<Integer> averageMergeRequestsDurationInHours;
+    private final Supplier<Integer> averageTimeToFirstCommentInHours;
+    private final Supplier<Double> countNitComments;
+    private final Supplier<CodeReviewInsightService.Percentiles> mergeRequestsDurationPercentiles;
+    private final Supplier<CodeReviewInsightService.Percentiles> timeToFirstCommentPercentiles;
+    private final Supplier<Long> getTimesFirstCommentWasNit;
+    private final Supplier<Map<CommentCategory, Long>> commentsByCategory;
+    private final Supplier<Map<CommentCategory, Long>> firstCommentsByCategory;
+    private final Supplier<Rollups> rollups;
     private final CodeReviewInsightService codeReviewInsightService;
     private Supplier<List<CodeReviewInsightService.Commenter>> topCommenters;
     private Supplier<List<CodeReviewInsightService.Contributor>> topContributors;
@@ -70,103 +93,131 @@ public class MarkdownReport {
         averageMergeRequestsDurationInHours = codeReviewInsightService::getAverageMergeRequestsDurationInHours;
         averageTimeToFirstCommentInHours = codeReviewInsightService::getAverageTimeToFirstCommentInHours;
         countNitComments  = codeReviewInsightService::getCountNitComments;
+        mergeRequestsDurationPercentiles = codeReviewInsightService::getMergeRequestsDurationPercentiles;
+        timeToFirstCommentPercentiles = codeReviewInsightService::getTimeToFirstCommentPercentiles;
         getTimesFirstCommentWasNit = codeReviewInsightService::getTimesFirstCommentWasNit;
+        commentsByCategory = codeReviewInsightService::getCommentsByCategory;
+        firstCommentsByCategory = codeReviewInsightService::getFirstCommentsByCategory;
+        rollups = codeReviewInsightService::getRollups;
         this.codeReviewInsightService = codeReviewInsightService;
     }
 
 
     public void generateReport() {
-        String template = FileUtils.loadFileAsString("report_template.md");
-        StringBuilder contributorsTableBuilder = new StringBuilder(CONTRIBUTOR_TABLE);
-        StringBuilder commentersTableBuilder = new StringBuilder(COMMENTERS_TABLE);
-        StringBuilder approversTableBuilder = new StringBuilder(APPROVERS_TABLE);
-        StringBuilder hottestMergeRequestsTableBuilder = new StringBuilder(HOTTEST_MERGE_REQUESTS_TABLE);
-        StringBuilder longestMergeRequestsTableBuilder = new StringBuilder(LONGEST_MERGE_REQUESTS_TABLE);
-        StringBuilder biggestMergeRequestsTableBuilder = new StringBuilder(BIGGEST_MERGE_REQUESTS_TABLE);
-
-        topCommenters
-                .get()
-                .stream()
-                .sorted(Comparator.comparing(CodeReviewInsightService.Commenter::comments).reversed())
-                .map(c -> "|%s|%d|\n".formatted(c.name(), c.comments()))
-                .forEach(commentersTableBuilder::append);
-
-        topContributors
-                .get()
-                .stream()
-                .sorted(Comparator.comparing(CodeReviewInsightService.Contributor::contributes).reversed())
-                .map(c -> "|%s|%d|\n".formatted(c.name(), c.contributes()))
-                .forEach(contributorsTableBuilder::append);
-        topApprovers
-                .get()
-                .stream()
-                .sorted(Comparator.comparing(CodeReviewInsightService.Approver::approvals).reversed())
-                .map(c -> "|%s|%d|\n".formatted(c.name(), c.approvals()))
-                .forEach(approversTableBuilder::append);
-        hottestMrs
-                .get()
-                .stream()
-                .sorted(Comparator.comparing(CodeReviewInsightService.HotMr::interactions).reversed())
-                .limit(10)
-                .map(mr -> "|%s|%s|%s|%d|\n".formatted(mr.link(), mr.title(), mr.author(), mr.interactions()))
-                .forEach(hottestMergeRequestsTableBuilder::append);
-        longestMrs
-                .get()
-                .stream()
-                .sorted(Comparator.comparing(CodeReviewInsightService.LongMr::durationInHours).reversed())
-                .limit(10)
-                .map(mr -> "|%s|%s|%s|%d|\n".formatted(mr.link(), mr.title(), mr.author(), mr.durationInHours()))
-                .forEach(longestMergeRequestsTableBuilder::append);
-        biggestMrs
-                .get()
-                .stream()
-                .sorted(Comparator.comparing(CodeReviewInsightService.BigMr::changes).reversed())
-                .limit(10)
-                .map(mr -> "|%s|%s|%s|%d|\n".formatted(mr.link(), mr.title(), mr.author(), mr.changes()))
-                .forEach(biggestMergeRequestsTableBuilder::append);
-        String report = template
-                .replace(
-                        CONTRIBUTOR_TABLE_PLACEHOLDER,
-                        contributorsTableBuilder.toString())
-                .replace(
-                        COMMENTERS_TABLE_PLACEHOLDER,
-                        commentersTableBuilder.toString())
-                .replace(
-                        APPROVERS_TABLE_PLACEHOLDER,
-                        approversTableBuilder.toString())
-                .replace(
-                        HOTTEST_MERGE_REQUESTS_TABLE_PLACEHOLDER,
-                        hottestMergeRequestsTableBuilder.toString())
-                .replace(
-                        LONGEST_MERGE_REQUESTS_TABLE_PLACEHOLDER,
-                        longestMergeRequestsTableBuilder.toString())
-                .replace(
-                        BIGGEST_MERGE_REQUESTS_TABLE_PLACEHOLDER,
-                        biggestMergeRequestsTableBuilder.toString())
-                .replace(
-                        AVERAGE_DURATION_PLACEHOLDER,
-                        averageMergeRequestsDurationInHours.get().toString())
-                .replace(
-                        AVERAGE_FIRST_COMMENT_DURATION_PLACEHOLDER,
-                        averageTimeToFirstCommentInHours.get().toString())
-                .replace(
-                        AVERAGE_NIT_COUNT_PLACEHOLDER,
-                        countNitComments.get().toString())
-                .replace(TIMES_FIRST_COMMENT_WAS_NIT_PLACEHOLDER,
-                         getTimesFirstCommentWasNit.get().toString())
-                .replace(
-                        NUMBER_OF_ANALYSED_MERGE_REQUESTS_PLACEHOLDER,
-                         codeReviewInsightService.mergeRequestsCount()+"")
-                .replace(
-                        TARGET_DATE_FROM_PLACEHOLDER,
-                        codeReviewInsightService.mergeRequestsFrom().toString())
-                ;
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
-            writer.write(report);
+        try (Writer writer = Files.newBufferedWriter(outputFile.toPath())) {
+            writeReport(writer);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+    }
+
+    /**
+     * Renders the report into {@code out}: every section is written there as it is computed.
+     */
+    public void writeReport(Writer out) throws IOException {
+        Map<String, Template.Section> sections = new HashMap<>();
+        sections.put(CONTRIBUTOR_TABLE_PLACEHOLDER, table(
+                CONTRIBUTOR_TABLE,
+                () -> topContributors.get()
+                                     .stream()
+                                     .sorted(Comparator.comparing(CodeReviewInsightService.Contributor::contributes).reversed())
+                                     .map(c -> cells(c.name(), c.contributes()))));
+        sections.put(COMMENTERS_TABLE_PLACEHOLDER, table(
+                COMMENTERS_TABLE,
+                () -> topCommenters.get()
+                                   .stream()
+                                   .sorted(Comparator.comparing(CodeReviewInsightService.Commenter::comments).reversed())
+                                   .map(c -> cells(c.name(), c.comments()))));
+        sections.put(APPROVERS_TABLE_PLACEHOLDER, table(
+                APPROVERS_TABLE,
+                () -> topApprovers.get()
+                                  .stream()
+                                  .sorted(Comparator.comparing(CodeReviewInsightService.Approver::approvals).reversed())
+                                  .map(c -> cells(c.name(), c.approvals()))));
+        sections.put(HOTTEST_MERGE_REQUESTS_TABLE_PLACEHOLDER, table(
+                HOTTEST_MERGE_REQUESTS_TABLE,
+                () -> hottestMrs.get()
+                                .stream()
+                                .map(mr -> cells(mr.link(), mr.title(), mr.author(), mr.interactions()))));
+        sections.put(LONGEST_MERGE_REQUESTS_TABLE_PLACEHOLDER, table(
+                LONGEST_MERGE_REQUESTS_TABLE,
+                () -> longestMrs.get()
+                                .stream()
+                                .map(mr -> cells(mr.link(), mr.title(), mr.author(), mr.durationInHours()))));
+        sections.put(BIGGEST_MERGE_REQUESTS_TABLE_PLACEHOLDER, table(
+                BIGGEST_MERGE_REQUESTS_TABLE,
+                () -> biggestMrs.get()
+                                .stream()
+                                .map(mr -> cells(mr.link(), mr.title(), mr.author(), mr.changes(),
+                                                 Optional.ofNullable(mr.linesAdded()).map(String::valueOf).orElse("-"),
+                                                 Optional.ofNullable(mr.linesRemoved()).map(String::valueOf).orElse("-")))));
+        sections.put(COMMENT_CATEGORIES_TABLE_PLACEHOLDER, table(
+                COMMENT_CATEGORIES_TABLE,
+                () -> {
+                    Map<CommentCategory, Long> firstComments = firstCommentsByCategory.get();
+                    return commentsByCategory.get()
+                                             .entrySet()
+                                             .stream()
+                                             .map(category -> cells(category.getKey(), category.getValue(), firstComments.get(category.getKey())));
+                }));
+        sections.put(WEEKLY_TREND_TABLE_PLACEHOLDER, trendTable(Granularity.WEEK, "week"));
+        sections.put(MONTHLY_TREND_TABLE_PLACEHOLDER, trendTable(Granularity.MONTH, "month"));
+        sections.put(AVERAGE_DURATION_PLACEHOLDER, value(averageMergeRequestsDurationInHours));
+        sections.put(AVERAGE_FIRST_COMMENT_DURATION_PLACEHOLDER, value(averageTimeToFirstCommentInHours));
+        sections.put(DURATION_PERCENTILES_PLACEHOLDER, value(() -> percentiles(mergeRequestsDurationPercentiles.get())));
+        sections.put(FIRST_COMMENT_DURATION_PERCENTILES_PLACEHOLDER, value(() -> percentiles(timeToFirstCommentPercentiles.get())));
+        sections.put(AVERAGE_NIT_COUNT_PLACEHOLDER, value(countNitComments));
+        sections.put(TIMES_FIRST_COMMENT_WAS_NIT_PLACEHOLDER, value(getTimesFirstCommentWasNit));
+        sections.put(NUMBER_OF_ANALYSED_MERGE_REQUESTS_PLACEHOLDER, value(codeReviewInsightService::mergeRequestsCount));
+        sections.put(TARGET_DATE_FROM_PLACEHOLDER, value(codeReviewInsightService::mergeRequestsFrom));
+        TEMPLATE.render(out, sections);
+    }
+
+    private static String percentiles(CodeReviewInsightService.Percentiles percentiles) {
+        return "p50 %d, p90 %d, p99 %d".formatted(percentiles.p50(), percentiles.p90(), percentiles.p99());
+    }
+
+    private Template.Section trendTable(Granularity granularity, String bucketName) {
+        return table(
+                TREND_TABLE.formatted(bucketName),
+                () -> rollups.get()
+                             .buckets(granularity)
+                             .stream()
+                             .map(rollup -> cells(
+                                     granularity.label(rollup.start()),
+                                     rollup.mergeRequests(),
+                                     rollup.averageDurationInMinutes(),
+                                     rollup.durationQuantiles().quantile(0.5),
+                                     rollup.durationQuantiles().quantile(0.9),
+                                     rollup.averageTimeToFirstCommentInMinutes(),
+                                     rollup.timeToFirstCommentQuantiles().quantile(0.9),
+                                     rollup.nitComments(),
+                                     "%.2f".formatted(rollup.averageNitComments()))));
+    }
+
+    /**
+     * A markdown table, {@code rows} being written one at a time as they are produced.
+     */
+    private static Template.Section table(String header, Supplier<Stream<Object[]>> rows) {
+        return out -> {
+            out.write(header);
+            Iterator<Object[]> iterator = rows.get().iterator();
+            while (iterator.hasNext()) {
+                for (Object cell : iterator.next()) {
+                    out.write('|');
+                    out.write(String.valueOf(cell));
+                }
+                out.write("|\n");
+            }
+        };
+    }
+
+    private static Object[] cells(Object... cells) {
+        return cells;
+    }
 
+    private static Template.Section value(Supplier<?> value) {
+        return out -> out.write(String.valueOf(value.get()));
     }
 
 
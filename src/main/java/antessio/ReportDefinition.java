@@ -0,0 +1,97 @@
+package antessio;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+import antessio.common.ObjectMapperJsonConverter;
+
+/**
+ * One report of a batch: the merge requests of the {@code team} created in {@code [from, to)} in one of the
+ * {@code projects}, with the comments of the team only, rendered to {@code output}. A {@code null} or empty team or
+ * project list takes them all; a crawl only lists the authors of a team, so an empty team is for reports out of a
+ * backup.
+ */
+public record ReportDefinition(List<String> team, Instant from, Instant to, List<String> projects, String output) {
+
+    public ReportDefinition {
+        Objects.requireNonNull(from, "from");
+        Objects.requireNonNull(to, "to");
+        Objects.requireNonNull(output, "output");
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("report %s: from %s is not before to %s".formatted(output, from, to));
+        }
+        team = Optional.ofNullable(team).map(List::copyOf).orElseGet(List::of);
+        projects = Optional.ofNullable(projects).map(List::copyOf).orElseGet(List::of);
+    }
+
+    public boolean matches(CodeReviewDataExporter.MergeRequest mr) {
+        return !mr.createdAt().isBefore(from)
+               && mr.createdAt().isBefore(to)
+               && (team.isEmpty() || team.contains(mr.author()))
+               && (projects.isEmpty() || (mr.project() != null && projects.contains(mr.project().id())));
+    }
+
+    /**
+     * The merge request as the report sees it, without the comments of people outside the team, or empty when it is
+     * not part of the report.
+     */
+    public Optional<CodeReviewDataExporter.MergeRequest> select(CodeReviewDataExporter.MergeRequest mr) {
+        if (!matches(mr)) {
+            return Optional.empty();
+        }
+        if (team.isEmpty() || mr.comments().stream().allMatch(comment -> team.contains(comment.author()))) {
+            return Optional.of(mr);
+        }
+        return Optional.of(mr.withComments(mr.comments()
+                                             .stream()
+                                             .filter(comment -> team.contains(comment.author()))
+                                             .toList()));
+    }
+
+    /**
+     * The definitions stored in {@code file} as a json array.
+     */
+    public static List<ReportDefinition> read(Path file) {
+        try {
+            return List.of(new ObjectMapperJsonConverter().fromJson(Files.readString(file), ReportDefinition[].class));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Every author of the definitions, for a single crawl covering them all.
+     *
+     * @throws IllegalArgumentException when a definition has no team: the crawl would not list any author for it
+     */
+    public static List<String> teamOf(Collection<ReportDefinition> definitions) {
+        definitions.stream()
+                   .filter(definition -> definition.team().isEmpty())
+                   .findFirst()
+                   .ifPresent(definition -> {
+                       throw new IllegalArgumentException(
+                               "report %s has no team: only reports out of the backup take every author".formatted(definition.output()));
+                   });
+        Set<String> team = new LinkedHashSet<>();
+        definitions.forEach(definition -> team.addAll(definition.team()));
+        return List.copyOf(team);
+    }
+
+    public static Instant fromOf(Collection<ReportDefinition> definitions) {
+        return definitions.stream().map(ReportDefinition::from).min(Comparator.naturalOrder()).orElseThrow();
+    }
+
+    public static Instant toOf(Collection<ReportDefinition> definitions) {
+        return definitions.stream().map(ReportDefinition::to).max(Comparator.naturalOrder()).orElseThrow();
+    }
+
+}
@@ -0,0 +1,106 @@
+package antessio.classification;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton over ascii patterns, matched case-insensitively: the text is scanned once whatever the
+ * number of patterns. Non-ascii chars never match, so the text can also be the utf-8 bytes of a string seen as
+ * one char per byte.
+ */
+public class AhoCorasickMatcher implements MultiPatternMatcher {
+
+    private static final int ALPHABET = 128;
+
+    // next[state][c]: state reached reading c, failure transitions already folded in
+    private final int[][] next;
+    // patterns ending at a state, including the ones ending at its suffixes
+    private final int[][] outputs;
+    private final int[] lengths;
+
+    public AhoCorasickMatcher(List<String> patterns) {
+        List<int[]> trie = new ArrayList<>();
+        List<int[]> ownOutputs = new ArrayList<>();
+        trie.add(newState());
+        ownOutputs.add(new int[0]);
+        lengths = new int[patterns.size()];
+        for (int pattern = 0; pattern < patterns.size(); pattern++) {
+            String value = patterns.get(pattern);
+            if (value.isEmpty() || !value.chars().allMatch(c -> c < ALPHABET)) {
+                throw new IllegalArgumentException("patterns must be non empty ascii strings, was '" + value + "'");
+            }
+            int state = 0;
+            for (int i = 0; i < value.length(); i++) {
+                int c = Character.toLowerCase(value.charAt(i));
+                if (trie.get(state)[c] < 0) {
+                    trie.get(state)[c] = trie.size();
+                    trie.add(newState());
+                    ownOutputs.add(new int[0]);
+                }
+                state = trie.get(state)[c];
+            }
+            int[] own = ownOutputs.get(state);
+            own = Arrays.copyOf(own, own.length + 1);
+            own[own.length - 1] = pattern;
+            ownOutputs.set(state, own);
+            lengths[pattern] = value.length();
+        }
+
+        next = trie.toArray(new int[0][]);
+        outputs = ownOutputs.toArray(new int[0][]);
+        int[] failure = new int[next.length];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < ALPHABET; c++) {
+            if (next[0][c] < 0) {
+                next[0][c] = 0;
+            } else {
+                queue.add(next[0][c]);
+            }
+        }
+        // breadth first, so the failure state of every state is complete before the state itself
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            outputs[state] = concat(outputs[state], outputs[failure[state]]);
+            for (int c = 0; c < ALPHABET; c++) {
+                int child = next[state][c];
+                if (child < 0) {
+                    next[state][c] = next[failure[state]][c];
+                } else {
+                    failure[child] = next[failure[state]][c];
+                    queue.add(child);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void forEachMatch(CharSequence text, MatchListener listener) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            state = c < ALPHABET ? next[state][Character.toLowerCase(c)] : 0;
+            for (int pattern : outputs[state]) {
+                listener.onMatch(pattern, i + 1 - lengths[pattern], i + 1);
+            }
+        }
+    }
+
+    private static int[] newState() {
+        int[] state = new int[ALPHABET];
+        Arrays.fill(state, -1);
+        return state;
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        if (b.length == 0) {
+            return a;
+        }
+        int[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+}
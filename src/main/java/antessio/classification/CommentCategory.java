@@ -0,0 +1,40 @@
+package antessio.classification;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Kinds of review comments told apart by {@link CommentClassifier}; a comment can be of several kinds or of none.
+ */
+public enum CommentCategory {
+    NIT,
+    SUGGESTION,
+    BLOCKING,
+    QUESTION;
+
+    private static final CommentCategory[] VALUES = values();
+
+    public int bit() {
+        return 1 << ordinal();
+    }
+
+    public static int mask(Set<CommentCategory> categories) {
+        int mask = 0;
+        for (CommentCategory category : categories) {
+            mask |= category.bit();
+        }
+        return mask;
+    }
+
+    public static Set<CommentCategory> fromMask(int mask) {
+        EnumSet<CommentCategory> categories = EnumSet.noneOf(CommentCategory.class);
+        for (CommentCategory category : VALUES) {
+            if ((mask & category.bit()) != 0) {
+                categories.add(category);
+            }
+        }
+        return Collections.unmodifiableSet(categories);
+    }
+
+}
@@ -0,0 +1,144 @@
+package antessio.classification;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import antessio.CodeReviewDataExporter.Comment;
+
+/**
+ * Tells the categories of a comment from the markers it contains, e.g. {@code nit} or {@code blocking}. Markers are
+ * matched case-insensitively and as whole words only, all of them in a single scan of the body.
+ * <p>
+ * NIT comments used to be the ones containing {@code NIT} anywhere: {@code nit:} now counts too, while words merely
+ * containing it ({@code UNIT}, {@code NITROGEN}) no longer do. Plurals are markers of their own, as in {@code nits:}.
+ * <p>
+ * A marker right after {@code non} or {@code not} (optionally {@code not a}) is negated and does not count:
+ * {@code non-blocking:} and {@code not a blocker} label the opposite. Markers that are common words in prose,
+ * {@code question} and {@code suggestion}, only count as labels: {@code question:}, {@code (question)} or
+ * {@code [question]}.
+ */
+public class CommentClassifier {
+
+    private static final CommentClassifier DEFAULT = new CommentClassifier(defaultMarkers());
+
+    private final MultiPatternMatcher matcher;
+    private final CommentCategory[] categoryOfPattern;
+
+    public CommentClassifier(Map<String, CommentCategory> markers) {
+        this(markers, AhoCorasickMatcher::new);
+    }
+
+    /**
+     * @param matcherFactory builds the matcher of the markers, in the iteration order of {@code markers}
+     */
+    public CommentClassifier(Map<String, CommentCategory> markers, Function<List<String>, MultiPatternMatcher> matcherFactory) {
+        List<String> patterns = new ArrayList<>(markers.keySet());
+        this.matcher = matcherFactory.apply(patterns);
+        this.categoryOfPattern = patterns.stream()
+                                         .map(markers::get)
+                                         .toArray(CommentCategory[]::new);
+    }
+
+    public static CommentClassifier defaults() {
+        return DEFAULT;
+    }
+
+    /**
+     * The categories stored on the comment, classifying it only when it was stored without them.
+     */
+    public Set<CommentCategory> categoriesOf(Comment comment) {
+        return comment.categories() != null ? comment.categories() : classify(comment);
+    }
+
+    public Set<CommentCategory> classify(Comment comment) {
+        return CommentCategory.fromMask(classify(comment.rawBody()));
+    }
+
+    /**
+     * @return the {@link CommentCategory#mask(Set) mask} of the categories of {@code text}
+     */
+    public int classify(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+        int[] mask = new int[1];
+        matcher.forEachMatch(text, (pattern, start, end) -> {
+            // punctuation ends a marker by itself, as in "question:"
+            boolean wordStart = !isWordChar(text, start) || !isWordChar(text, start - 1);
+            boolean wordEnd = !isWordChar(text, end - 1) || !isWordChar(text, end);
+            if (wordStart && wordEnd && !isNegated(text, start)) {
+                mask[0] |= categoryOfPattern[pattern].bit();
+            }
+        });
+        return mask[0];
+    }
+
+    /**
+     * Whether the word before {@code start}, past one space or hyphen and an optional article, is {@code non} or
+     * {@code not}.
+     */
+    private static boolean isNegated(CharSequence text, int start) {
+        int end = skipSeparator(text, start);
+        if (end == start) {
+            return false;
+        }
+        if (endsWithWord(text, end, "a")) {
+            end = skipSeparator(text, end - 1);
+        } else if (endsWithWord(text, end, "an")) {
+            end = skipSeparator(text, end - 2);
+        }
+        return endsWithWord(text, end, "non") || endsWithWord(text, end, "not");
+    }
+
+    private static int skipSeparator(CharSequence text, int end) {
+        return end > 0 && (text.charAt(end - 1) == ' ' || text.charAt(end - 1) == '-') ? end - 1 : end;
+    }
+
+    private static boolean endsWithWord(CharSequence text, int end, String word) {
+        int start = end - word.length();
+        if (start < 0 || isWordChar(text, start - 1)) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.toLowerCase(text.charAt(start + i)) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Ascii only, so that the bytes of a utf-8 string seen as chars give the same answer as the string.
+     */
+    private static boolean isWordChar(CharSequence text, int index) {
+        if (index < 0 || index >= text.length()) {
+            return false;
+        }
+        char c = text.charAt(index);
+        return c == '_' || (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static Map<String, CommentCategory> defaultMarkers() {
+        Map<String, CommentCategory> markers = new LinkedHashMap<>();
+        markers.put("nit", CommentCategory.NIT);
+        markers.put("nits", CommentCategory.NIT);
+        markers.put("nitpick", CommentCategory.NIT);
+        markers.put("nitpicks", CommentCategory.NIT);
+        markers.put("blocking", CommentCategory.BLOCKING);
+        markers.put("blocker", CommentCategory.BLOCKING);
+        label(markers, "suggestion", CommentCategory.SUGGESTION);
+        label(markers, "question", CommentCategory.QUESTION);
+        return markers;
+    }
+
+    private static void label(Map<String, CommentCategory> markers, String label, CommentCategory category) {
+        markers.put(label + ":", category);
+        markers.put("(" + label + ")", category);
+        markers.put("[" + label + "]", category);
+    }
+
+}
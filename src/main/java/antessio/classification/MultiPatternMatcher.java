@@ -0,0 +1,21 @@
+package antessio.classification;
+
+/**
+ * Finds occurrences of a fixed set of patterns in a text.
+ */
+public interface MultiPatternMatcher {
+
+    /**
+     * Reports every occurrence of the patterns in {@code text}, as the index of the pattern and the range
+     * {@code [start, end)} it spans.
+     */
+    void forEachMatch(CharSequence text, MatchListener listener);
+
+    @FunctionalInterface
+    interface MatchListener {
+
+        void onMatch(int pattern, int start, int end);
+
+    }
+
+}
@@ -1,18 +1,31 @@
 package antessio.common;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import antessio.common.exception.BadRequestException;
 import antessio.common.exception.InternalServerErrorException;
 import antessio.common.exception.NotFoundException;
+import antessio.common.exception.TooManyRequestsException;
 
 
 public class HttpClient {
@@ -21,15 +34,31 @@ public class HttpClient {
 
     }
 
+    private static final int DEFAULT_PAGES_AHEAD = 4;
+
     private final String uri;
     private final java.net.http.HttpClient httpClient;
-    private final ObjectMapperJsonConverter jsonConverter;
+    private final JsonConverter jsonConverter;
+    private final ResponseCache responseCache;
+    private final RequestScheduler requestScheduler;
+    private final Executor decoder = Executors.newVirtualThreadPerTaskExecutor();
 
     public HttpClient(String uri) {
+        this(uri, new ObjectMapperJsonConverter(), null, null);
+    }
+
+    /**
+     * When {@code responseCache} is not null, GET responses carrying an {@code ETag} or {@code Last-Modified}
+     * header are stored and later requests for the same url are revalidated with a conditional request.
+     * When {@code requestScheduler} is not null, requests are paced by it and retried when rate limited.
+     */
+    public HttpClient(String uri, JsonConverter jsonConverter, ResponseCache responseCache, RequestScheduler requestScheduler) {
         this.uri = uri;
         this.httpClient = java.net.http.HttpClient
                 .newHttpClient();
-        this.jsonConverter = new ObjectMapperJsonConverter();
+        this.jsonConverter = jsonConverter;
+        this.responseCache = responseCache;
+        this.requestScheduler = requestScheduler;
     }
 
     public <RESPONSE> RESPONSE get(Class<RESPONSE> clz, String path, Map<String, Object> queryParameters) {
@@ -41,19 +70,7 @@ public class HttpClient {
     }
 
     public <RESPONSE> RESPONSE get(Class<RESPONSE> clz, String path, Map<String, Object> queryParameters, Map<String, List<String>> headers) {
-        return call(
-                this.httpClient,
-                HttpRequest.newBuilder()
-                           .uri(URI.create(
-                                   String.format(
-                                           "%s/%s?%s",
-                                           uri,
-                                           path,
-                                           ClientUtils.getQueryParameters(queryParameters))))
-                           .headers(flattenMap(headers))
-                           .GET()
-                           .build(),
-                responseBodyStr -> jsonConverter.fromJson(responseBodyStr, clz));
+        return await(getAsync(clz, path, queryParameters, headers));
     }
 
     public <RESPONSE> WithHeaders<RESPONSE> getWithHeaders(
@@ -61,87 +78,264 @@ public class HttpClient {
             String path,
             Map<String, Object> queryParameters,
             Map<String, List<String>> headers) {
-        return callWithHeaders(
-                this.httpClient,
-                HttpRequest.newBuilder()
-                           .uri(URI.create(
-                                   String.format(
-                                           "%s/%s?%s",
-                                           uri,
-                                           path,
-                                           ClientUtils.getQueryParameters(queryParameters))))
-                           .headers(flattenMap(headers))
-                           .GET()
-                           .build(),
-                responseBodyStr -> jsonConverter.fromJson(responseBodyStr, clz));
+        return await(getWithHeadersAsync(clz, path, queryParameters, headers));
+    }
+
+    public <RESPONSE> CompletableFuture<RESPONSE> getAsync(
+            Class<RESPONSE> clz,
+            String path,
+            Map<String, Object> queryParameters,
+            Map<String, List<String>> headers) {
+        return getWithHeadersAsync(clz, path, queryParameters, headers).thenApply(WithHeaders::responseBody);
+    }
+
+    /**
+     * Sends the request without waiting for the response: many of them can be in flight at once over the same
+     * connection pool. The body is decoded while it is read, on a virtual thread.
+     */
+    public <RESPONSE> CompletableFuture<WithHeaders<RESPONSE>> getWithHeadersAsync(
+            Class<RESPONSE> clz,
+            String path,
+            Map<String, Object> queryParameters,
+            Map<String, List<String>> headers) {
+        return callAsync(getRequest(path, queryParameters, headers), clz);
+    }
+
+    /**
+     * The items of a paginated listing in page order, fetched lazily as the stream is consumed; see
+     * {@link #getPages(Class, String, Map, Map, int, int)}.
+     */
+    public <ITEM> Stream<ITEM> getPaginated(
+            Class<ITEM[]> pageClass,
+            String path,
+            Map<String, Object> queryParameters,
+            Map<String, List<String>> headers) {
+        return getPages(pageClass, path, queryParameters, headers, 1, DEFAULT_PAGES_AHEAD).flatMap(List::stream);
     }
 
+    /**
+     * The pages of a listing, from {@code firstPage} on. Once the first one tells how many pages there are, the
+     * following ones are requested concurrently, at most {@code pagesAhead} ahead of the page consumed; a listing
+     * without a count follows its {@code Link} to the next page instead. The page size is up to the caller, as a
+     * query parameter. Closing the stream drops the pages requested ahead.
+     */
+    public <ITEM> Stream<List<ITEM>> getPages(
+            Class<ITEM[]> pageClass,
+            String path,
+            Map<String, Object> queryParameters,
+            Map<String, List<String>> headers,
+            int firstPage,
+            int pagesAhead) {
+        return getPages(pageClass, path, queryParameters, headers, firstPage, pagesAhead, null);
+    }
+
+    /**
+     * {@link #getPages(Class, String, Map, Map, int, int)}, each page request taking one of {@code inFlight}'s permits
+     * until its response arrives: listings sharing the semaphore have at most that many requests in flight together.
+     * Requesting a page blocks until a permit is free.
+     */
+    public <ITEM> Stream<List<ITEM>> getPages(
+            Class<ITEM[]> pageClass,
+            String path,
+            Map<String, Object> queryParameters,
+            Map<String, List<String>> headers,
+            int firstPage,
+            int pagesAhead,
+            Semaphore inFlight) {
+        PageIterator<ITEM> pages = new PageIterator<>(
+                page -> {
+                    Map<String, Object> pageParameters = new LinkedHashMap<>(queryParameters);
+                    pageParameters.put("page", page);
+                    return withPermit(inFlight, () -> getWithHeadersAsync(pageClass, path, pageParameters, headers));
+                },
+                next -> withPermit(inFlight, () -> callAsync(getRequest(next, headers), pageClass)),
+                firstPage,
+                pagesAhead);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(pages, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                            .onClose(pages::close);
+    }
 
     public <REQUEST, RESPONSE> RESPONSE post(
             Class<RESPONSE> responseClass,
             String path,
             REQUEST request) {
+        return post(responseClass, path, request, Collections.emptyMap());
+    }
+
+    public <REQUEST, RESPONSE> RESPONSE post(
+            Class<RESPONSE> responseClass,
+            String path,
+            REQUEST request,
+            Map<String, List<String>> headers) {
+        return await(postAsync(responseClass, path, request, headers));
+    }
+
+    public <REQUEST, RESPONSE> CompletableFuture<RESPONSE> postAsync(
+            Class<RESPONSE> responseClass,
+            String path,
+            REQUEST request,
+            Map<String, List<String>> headers) {
         HttpRequest.BodyPublisher bodyRequest = HttpRequest.BodyPublishers.ofString(
                 jsonConverter.toJson(request)
         );
-        return call(this.httpClient, HttpRequest.newBuilder()
-                                                .uri(URI.create(
-                                                        String.format(
-                                                                "%s/%s",
-                                                                uri, path)))
-                                                .header("Content-Type", "application/json")
-                                                .POST(bodyRequest)
-                                                .build(),
-                    responseStr -> jsonConverter.fromJson(responseStr, responseClass));
-
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                                                 .uri(URI.create(
+                                                         String.format(
+                                                                 "%s/%s",
+                                                                 uri, path)))
+                                                 .header("Content-Type", "application/json")
+                                                 .POST(bodyRequest);
+        headers.forEach((name, values) -> values.forEach(value -> builder.header(name, value)));
+        return callAsync(builder.build(), responseClass).thenApply(WithHeaders::responseBody);
     }
 
-    private <T> T call(
-            java.net.http.HttpClient httpClient,
-            HttpRequest request,
-            Function<String, T> converter) {
+    private static <T> CompletableFuture<T> withPermit(Semaphore permits, Supplier<CompletableFuture<T>> request) {
+        if (permits == null) {
+            return request.get();
+        }
         try {
-            HttpResponse<String> httpResponseStr = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            if (httpResponseStr.statusCode() < 200 || httpResponseStr.statusCode() >= 300) {
-                throwException(httpResponseStr);
-            }
-            return converter.apply(httpResponseStr.body());
-        } catch (IOException | InterruptedException e) {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new RuntimeException(e);
         }
+        CompletableFuture<T> response;
+        try {
+            response = request.get();
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        // also released when the request is cancelled
+        response.whenComplete((result, failure) -> permits.release());
+        return response;
+    }
+
+    private <T> CompletableFuture<WithHeaders<T>> callAsync(HttpRequest request, Class<T> cls) {
+        if (requestScheduler == null) {
+            return exchangeAsync(request, cls);
+        }
+        return requestScheduler.executeAsync(() -> exchangeAsync(request, cls));
     }
 
-    private <T> WithHeaders<T> callWithHeaders(
-            java.net.http.HttpClient httpClient,
+    private <T> CompletableFuture<WithHeaders<T>> exchangeAsync(HttpRequest request, Class<T> cls) {
+        Optional<ResponseCache.Entry> cached = cachedEntry(request);
+        return httpClient.sendAsync(withValidators(request, cached), HttpResponse.BodyHandlers.ofInputStream())
+                         // reading the body blocks until it arrives, that is not for the threads of the client
+                         .thenApplyAsync(response -> decode(request, response, cached, cls), decoder);
+    }
+
+    private <T> WithHeaders<T> decode(
             HttpRequest request,
-            Function<String, T> converter) {
+            HttpResponse<InputStream> response,
+            Optional<ResponseCache.Entry> cached,
+            Class<T> cls) {
+        if (requestScheduler != null) {
+            requestScheduler.onResponse(response.headers().map());
+        }
+        if (response.statusCode() == 304 && cached.isPresent()) {
+            readString(response.body());
+            return new WithHeaders<>(jsonConverter.fromJson(cached.get().body(), cls), cached.get().headers());
+        }
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            throwException(response.statusCode(), readString(response.body()), response.headers().map());
+        }
+        Optional<ResponseCache.Entry> toStore = cacheable(request, response);
+        if (toStore.isEmpty()) {
+            return new WithHeaders<>(jsonConverter.fromJson(response.body(), cls), response.headers().map());
+        }
+        // a cached body is needed as a whole anyway
+        String body = readString(response.body());
+        responseCache.put(request.uri().toString(), toStore.get().withBody(body));
+        return new WithHeaders<>(jsonConverter.fromJson(body, cls), response.headers().map());
+    }
+
+    private static String readString(InputStream body) {
+        try (InputStream in = body) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static <T> T await(CompletableFuture<T> future) {
         try {
-            HttpResponse<String> httpResponseStr = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            if (httpResponseStr.statusCode() < 200 || httpResponseStr.statusCode() >= 300) {
-                throwException(httpResponseStr);
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
             }
-            return new WithHeaders<>(converter.apply(httpResponseStr.body()), httpResponseStr.headers().map());
-        } catch (IOException | InterruptedException e) {
-            throw new RuntimeException(e);
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private Optional<ResponseCache.Entry> cachedEntry(HttpRequest request) {
+        if (responseCache == null || !request.method().equals("GET")) {
+            return Optional.empty();
         }
+        return responseCache.get(request.uri().toString())
+                            .filter(ResponseCache.Entry::revalidatable);
     }
 
-    private static void throwException(HttpResponse<String> httpResponseStr) {
-        switch (httpResponseStr.statusCode()) {
+    private static HttpRequest withValidators(HttpRequest request, Optional<ResponseCache.Entry> cached) {
+        if (cached.isEmpty()) {
+            return request;
+        }
+        HttpRequest.Builder conditionalRequest = HttpRequest.newBuilder(request, (name, value) -> true);
+        Optional.ofNullable(cached.get().etag())
+                .ifPresent(etag -> conditionalRequest.header("If-None-Match", etag));
+        Optional.ofNullable(cached.get().lastModified())
+                .ifPresent(lastModified -> conditionalRequest.header("If-Modified-Since", lastModified));
+        return conditionalRequest.build();
+    }
+
+    /**
+     * The entry to store for the response, without its body yet; empty when the response is not to be cached.
+     */
+    private Optional<ResponseCache.Entry> cacheable(HttpRequest request, HttpResponse<?> response) {
+        if (responseCache == null || !request.method().equals("GET")) {
+            return Optional.empty();
+        }
+        return Optional.of(new ResponseCache.Entry(
+                                   null,
+                                   response.headers().firstValue("ETag").orElse(null),
+                                   response.headers().firstValue("Last-Modified").orElse(null),
+                                   response.headers().map()))
+                       .filter(ResponseCache.Entry::revalidatable);
+    }
+
+    private static void throwException(int statusCode, String body, Map<String, List<String>> headers) {
+        switch (statusCode) {
             case 400:
-                throw new BadRequestException(httpResponseStr.body());
+                throw new BadRequestException(body);
             case 404:
-                throw new NotFoundException(httpResponseStr.body());
+                throw new NotFoundException(body);
+            case 429:
+                throw new TooManyRequestsException(body, headers);
             case 500:
-                throw new InternalServerErrorException(httpResponseStr.body());
+                throw new InternalServerErrorException(body);
             default:
-                throw new RuntimeException("error %d body = %s".formatted(httpResponseStr.statusCode(), httpResponseStr.body()));
+                throw new RuntimeException("error %d body = %s".formatted(statusCode, body));
         }
     }
 
-    private String[] flattenMap(Map<String, List<String>> m) {
-        return m.entrySet().stream().flatMap(x -> x.getValue().stream().flatMap(y -> Stream.of(x.getKey(), y)))
-                .toArray(String[]::new);
+    private HttpRequest getRequest(String path, Map<String, Object> queryParameters, Map<String, List<String>> headers) {
+        return getRequest(
+                URI.create(
+                        String.format(
+                                "%s/%s%s",
+                                uri,
+                                path,
+                                ClientUtils.getQueryParameters(queryParameters))),
+                headers);
+    }
+
+    private static HttpRequest getRequest(URI requestUri, Map<String, List<String>> headers) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                                                 .uri(requestUri)
+                                                 .GET();
+        headers.forEach((name, values) -> values.forEach(value -> builder.header(name, value)));
+        return builder.build();
     }
 
 }
@@ -0,0 +1,27 @@
+package antessio.common;
+
+import java.util.Arrays;
+
+/**
+ * Int counters indexed by dense id (see {@link Interner}), growing as higher ids show up.
+ */
+public class IntCounters {
+
+    private int[] counters = new int[16];
+
+    public void increment(int id) {
+        add(id, 1);
+    }
+
+    public void add(int id, int delta) {
+        if (id >= counters.length) {
+            counters = Arrays.copyOf(counters, Math.max(id + 1, counters.length * 2));
+        }
+        counters[id] += delta;
+    }
+
+    public int get(int id) {
+        return id < counters.length ? counters[id] : 0;
+    }
+
+}
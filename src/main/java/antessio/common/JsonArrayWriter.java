@@ -0,0 +1,36 @@
+package antessio.common;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.databind.SequenceWriter;
+
+/**
+ * Appends values to a json array one at a time, so the whole array never has to be held in memory.
+ * The array is terminated on {@link #close()}.
+ */
+public class JsonArrayWriter<T> implements AutoCloseable {
+
+    private final SequenceWriter sequenceWriter;
+
+    JsonArrayWriter(SequenceWriter sequenceWriter) {
+        this.sequenceWriter = sequenceWriter;
+    }
+
+    public void append(T value) {
+        try {
+            sequenceWriter.write(value);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            sequenceWriter.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
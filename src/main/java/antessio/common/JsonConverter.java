@@ -1,9 +1,25 @@
 package antessio.common;
 
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
 public interface JsonConverter {
 
    <T> T fromJson(String json, Class<T> cls);
 
+   /**
+    * Parses the json as it is read from {@code json}, without buffering it first; the stream is closed.
+    */
+   <T> T fromJson(InputStream json, Class<T> cls);
+
    <T> String toJson(T object);
 
+   /**
+    * Lazily reads the elements of the json array stored in {@code file}; the stream must be closed.
+    */
+   <T> Stream<T> fromJsonArray(Path file, Class<T> cls);
+
+   <T> JsonArrayWriter<T> toJsonArray(Path file);
+
 }
@@ -0,0 +1,169 @@
+package antessio.common;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Cache of slowly changing metadata (projects, user ids) shared by everything using the same instance, and by later
+ * runs through its file. Values are kept serialized; an entry expires {@code ttl} after it was loaded, or
+ * {@code negativeTtl} for an empty value standing for something not found, which may show up any time. Concurrent
+ * lookups of the same key are loaded once.
+ * <p>
+ * Entries loaded since the file was read are only stored by {@link #flush()}, e.g. once a crawl is over; expired
+ * entries are dropped whenever the file is read or written. Without a file the cache lives as long as the instance.
+ */
+public class MetadataCache {
+
+    public record Entry(String value, Instant loadedAt) {
+
+    }
+
+    private record Entries(Map<String, Entry> entries) {
+
+    }
+
+    public static final Duration DEFAULT_NEGATIVE_TTL = Duration.ofHours(1);
+
+    private final Path file;
+    private final Duration ttl;
+    private final Duration negativeTtl;
+    private final Clock clock;
+    private final JsonConverter jsonConverter;
+    private final Map<String, Entry> entries;
+    private final Map<String, CompletableFuture<String>> loading = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final AtomicBoolean changed = new AtomicBoolean();
+
+    public MetadataCache(Path file, Duration ttl, Clock clock) {
+        this(file, ttl, ttl.compareTo(DEFAULT_NEGATIVE_TTL) < 0 ? ttl : DEFAULT_NEGATIVE_TTL, clock);
+    }
+
+    public MetadataCache(Path file, Duration ttl, Duration negativeTtl, Clock clock) {
+        this.file = file;
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+        this.clock = clock;
+        this.jsonConverter = new ObjectMapperJsonConverter();
+        this.entries = new ConcurrentHashMap<>(unexpired(read()));
+    }
+
+    /**
+     * The value of {@code key}, loaded with {@code load} and stored when missing or expired.
+     */
+    public String get(String key, Supplier<String> load) {
+        Entry entry = entries.get(key);
+        if (entry != null && !isExpired(entry)) {
+            hits.increment();
+            return entry.value();
+        }
+        CompletableFuture<String> loaded = new CompletableFuture<>();
+        CompletableFuture<String> inFlight = loading.putIfAbsent(key, loaded);
+        if (inFlight != null) {
+            // another thread is loading the same key
+            hits.increment();
+            return join(inFlight);
+        }
+        try {
+            Entry loadedMeanwhile = entries.get(key);
+            if (loadedMeanwhile != null && !isExpired(loadedMeanwhile)) {
+                hits.increment();
+                loaded.complete(loadedMeanwhile.value());
+                return loadedMeanwhile.value();
+            }
+            misses.increment();
+            String value = load.get();
+            entries.put(key, new Entry(value, clock.instant()));
+            changed.set(true);
+            loaded.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            loaded.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, loaded);
+        }
+    }
+
+    /**
+     * Stores the entries to the file, if any was loaded since the last time.
+     */
+    public void flush() {
+        if (changed.getAndSet(false)) {
+            write();
+        }
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+        changed.set(false);
+        write();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private boolean isExpired(Entry entry) {
+        return !clock.instant().isBefore(entry.loadedAt().plus(entry.value().isEmpty() ? negativeTtl : ttl));
+    }
+
+    private Map<String, Entry> unexpired(Map<String, Entry> all) {
+        return all.entrySet()
+                  .stream()
+                  .filter(e -> !isExpired(e.getValue()))
+                  .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+
+    private Map<String, Entry> read() {
+        if (file == null || !Files.exists(file)) {
+            return Map.of();
+        }
+        try {
+            return jsonConverter.fromJson(Files.readString(file), Entries.class).entries();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private synchronized void write() {
+        if (file == null) {
+            return;
+        }
+        Path partialFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.writeString(partialFile, jsonConverter.toJson(new Entries(unexpired(entries))));
+            FileUtils.moveReplacing(partialFile, file);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String join(CompletableFuture<String> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+}
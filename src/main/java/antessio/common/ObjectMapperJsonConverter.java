@@ -1,9 +1,20 @@
 package antessio.common;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
@@ -24,6 +35,10 @@ public class ObjectMapperJsonConverter implements JsonConverter {
 
     }
 
+    public ObjectMapperJsonConverter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
 
     @Override
     public <T> T fromJson(String json, Class<T> cls) {
@@ -34,6 +49,15 @@ public class ObjectMapperJsonConverter implements JsonConverter {
         }
     }
 
+    @Override
+    public <T> T fromJson(InputStream json, Class<T> cls) {
+        try (InputStream in = json) {
+            return this.objectMapper.readValue(in, cls);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public <T> String toJson(T object) {
         try {
@@ -43,4 +67,31 @@ public class ObjectMapperJsonConverter implements JsonConverter {
         }
     }
 
+    @Override
+    public <T> Stream<T> fromJsonArray(Path file, Class<T> cls) {
+        try {
+            MappingIterator<T> iterator = this.objectMapper.readerFor(cls).readValues(file.toFile());
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                                .onClose(() -> {
+                                    try {
+                                        iterator.close();
+                                    } catch (IOException e) {
+                                        throw new RuntimeException(e);
+                                    }
+                                });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public <T> JsonArrayWriter<T> toJsonArray(Path file) {
+        try {
+            return new JsonArrayWriter<>(this.objectMapper.writer()
+                                                          .writeValuesAsArray(new BufferedOutputStream(Files.newOutputStream(file))));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
 }
@@ -0,0 +1,99 @@
+package antessio.common;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Pages of a paginated listing, in order. Once the first page tells how many there are ({@code X-Total-Pages}), the
+ * next ones are requested up to {@code pagesAhead} pages ahead of the one consumed. Listings too large to be counted
+ * only link to their next page ({@code Link: <...>; rel="next"}), which is requested as soon as a page is consumed.
+ */
+class PageIterator<ITEM> implements Iterator<List<ITEM>>, AutoCloseable {
+
+    private static final Pattern NEXT_LINK = Pattern.compile("<([^>]+)>\\s*;\\s*rel=\"next\"");
+
+    private final IntFunction<CompletableFuture<HttpClient.WithHeaders<ITEM[]>>> page;
+    private final Function<URI, CompletableFuture<HttpClient.WithHeaders<ITEM[]>>> link;
+    private final int pagesAhead;
+    private final Deque<CompletableFuture<HttpClient.WithHeaders<ITEM[]>>> requested = new ArrayDeque<>();
+    private int nextPage;
+    private Integer lastPage;
+
+    PageIterator(
+            IntFunction<CompletableFuture<HttpClient.WithHeaders<ITEM[]>>> page,
+            Function<URI, CompletableFuture<HttpClient.WithHeaders<ITEM[]>>> link,
+            int firstPage,
+            int pagesAhead) {
+        if (pagesAhead < 1) {
+            throw new IllegalArgumentException("at least one page must be requested ahead, was " + pagesAhead);
+        }
+        this.page = page;
+        this.link = link;
+        this.pagesAhead = pagesAhead;
+        this.requested.add(page.apply(firstPage));
+        this.nextPage = firstPage + 1;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !requested.isEmpty();
+    }
+
+    @Override
+    public List<ITEM> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        HttpClient.WithHeaders<ITEM[]> response = HttpClient.await(requested.poll());
+        if (lastPage == null) {
+            lastPage = header(response.headers(), "X-Total-Pages")
+                    .filter(total -> !total.isBlank())
+                    .map(Integer::parseInt)
+                    // 0 stands for an uncounted listing, it is followed through its links
+                    .orElse(0);
+        }
+        if (lastPage > 0) {
+            while (requested.size() < pagesAhead && nextPage <= lastPage) {
+                requested.add(page.apply(nextPage++));
+            }
+        } else {
+            header(response.headers(), "Link")
+                    .map(NEXT_LINK::matcher)
+                    .filter(Matcher::find)
+                    .map(matcher -> URI.create(matcher.group(1)))
+                    .ifPresent(next -> requested.add(link.apply(next)));
+        }
+        return Arrays.asList(response.responseBody());
+    }
+
+    /**
+     * Drops the pages requested and not consumed yet.
+     */
+    @Override
+    public void close() {
+        requested.forEach(future -> future.cancel(false));
+        requested.clear();
+    }
+
+    private static Optional<String> header(Map<String, List<String>> headers, String name) {
+        // header names are case insensitive, and HTTP/2 ones are lower case
+        return headers.entrySet()
+                      .stream()
+                      .filter(header -> header.getKey().equalsIgnoreCase(name))
+                      .flatMap(header -> header.getValue().stream())
+                      .findFirst();
+    }
+
+}
@@ -0,0 +1,106 @@
+package antessio.common;
+
+import java.util.Arrays;
+
+/**
+ * Streaming quantiles of non-negative values within a relative error: values are counted in logarithmic buckets,
+ * bucket {@code i} holding the values in {@code (gamma^(i-1), gamma^i]}. Memory depends on the range of the values,
+ * not on how many there are (a few hundred buckets from a minute to a year at 1%), and sketches with the same
+ * accuracy merge exactly by adding their counts, in any order.
+ */
+public class QuantileSketch {
+
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+
+    private double relativeAccuracy;
+    private long zeroCount;
+    private long[] counts;
+    private long count;
+    private long min;
+    private long max;
+
+    public QuantileSketch(double relativeAccuracy) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException("relative accuracy must be in (0, 1), was " + relativeAccuracy);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.counts = new long[0];
+        this.min = Long.MAX_VALUE;
+        this.max = Long.MIN_VALUE;
+    }
+
+    public QuantileSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY);
+    }
+
+    public void add(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("negative values are not supported, was " + value);
+        }
+        if (value == 0) {
+            zeroCount++;
+        } else {
+            int index = (int) Math.ceil(Math.log(value) / logGamma());
+            if (index >= counts.length) {
+                counts = Arrays.copyOf(counts, Math.max(index + 1, counts.length * 2));
+            }
+            counts[index]++;
+        }
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public void merge(QuantileSketch other) {
+        if (relativeAccuracy != other.relativeAccuracy) {
+            throw new IllegalArgumentException("sketches with different accuracy can't be merged");
+        }
+        if (other.counts.length > counts.length) {
+            counts = Arrays.copyOf(counts, other.counts.length);
+        }
+        for (int i = 0; i < other.counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        zeroCount += other.zeroCount;
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * The value of rank {@code quantile * (count - 1)} among the values added, within the relative accuracy;
+     * 0 when the sketch is empty.
+     */
+    public long quantile(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("quantile must be in [0, 1], was " + quantile);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) (quantile * (count - 1));
+        long seen = zeroCount;
+        if (rank < seen) {
+            return 0;
+        }
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (rank < seen) {
+                // middle of the bucket in relative terms, the extremes are known exactly
+                double gamma = Math.exp(logGamma());
+                long value = Math.round(2 * Math.pow(gamma, i) / (gamma + 1));
+                return Math.max(min, Math.min(max, value));
+            }
+        }
+        return max;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    private double logGamma() {
+        return Math.log1p(2 * relativeAccuracy / (1 - relativeAccuracy));
+    }
+
+}
@@ -0,0 +1,200 @@
+package antessio.common;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import antessio.common.exception.TooManyRequestsException;
+
+/**
+ * Paces requests sharing the same rate limit (e.g. a GitLab token) across all the threads using it.
+ * <p>
+ * Every request reserves a slot: slots are spread out when {@code RateLimit-Remaining} runs low, everybody waits
+ * for {@code RateLimit-Reset} once it reaches zero, and a 429 pauses all callers for {@code Retry-After} (or a
+ * jittered exponential backoff) before the request is retried.
+ */
+public class RequestScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestScheduler.class);
+
+    public static final int DEFAULT_MAX_RETRIES = 5;
+    public static final Duration DEFAULT_BASE_BACKOFF = Duration.ofSeconds(1);
+    public static final Duration DEFAULT_MAX_BACKOFF = Duration.ofMinutes(1);
+    // below this many remaining requests the pace is slowed down to last until the reset
+    private static final int LOW_REMAINING_REQUESTS = 50;
+    private static final Pattern NUMBER = Pattern.compile("\\d{1,18}");
+
+    private final int maxRetries;
+    private final Duration baseBackoff;
+    private final Duration maxBackoff;
+    private final AtomicLong nextSlotNanos = new AtomicLong(System.nanoTime());
+    private final AtomicLong intervalNanos = new AtomicLong(0);
+    private final LongAdder throttledNanos = new LongAdder();
+    private final LongAdder throttledRequests = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+
+    public RequestScheduler() {
+        this(DEFAULT_MAX_RETRIES, DEFAULT_BASE_BACKOFF, DEFAULT_MAX_BACKOFF);
+    }
+
+    public RequestScheduler(int maxRetries, Duration baseBackoff, Duration maxBackoff) {
+        this.maxRetries = maxRetries;
+        this.baseBackoff = baseBackoff;
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * Runs {@code request} in its slot, retrying it when it fails with {@link TooManyRequestsException}.
+     */
+    public <T> T execute(Supplier<T> request) {
+        for (int attempt = 0; ; attempt++) {
+            awaitSlot();
+            try {
+                return request.get();
+            } catch (TooManyRequestsException e) {
+                if (attempt >= maxRetries) {
+                    throw e;
+                }
+                Duration delay = retryAfter(e.getHeaders()).orElseGet(backoff(attempt));
+                LOGGER.debug("rate limited, retrying in {} (attempt {} of {})", delay, attempt + 1, maxRetries);
+                retries.increment();
+                pauseFor(delay);
+            }
+        }
+    }
+
+    /**
+     * Asynchronous {@link #execute(Supplier)}: {@code request} is started once its slot comes, without blocking a
+     * thread until then, and started again after a {@link TooManyRequestsException}.
+     */
+    public <T> CompletableFuture<T> executeAsync(Supplier<CompletableFuture<T>> request) {
+        return executeAsync(request, 0);
+    }
+
+    private <T> CompletableFuture<T> executeAsync(Supplier<CompletableFuture<T>> request, int attempt) {
+        long wait = reserveSlot();
+        Executor inSlot = wait > 0 ? CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS) : Runnable::run;
+        return CompletableFuture.supplyAsync(() -> null, inSlot)
+                                .thenCompose(slot -> request.get())
+                                .exceptionallyCompose(failure -> {
+                                    Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+                                    if (!(cause instanceof TooManyRequestsException e) || attempt >= maxRetries) {
+                                        return CompletableFuture.failedFuture(cause);
+                                    }
+                                    Duration delay = retryAfter(e.getHeaders()).orElseGet(backoff(attempt));
+                                    LOGGER.debug("rate limited, retrying in {} (attempt {} of {})", delay, attempt + 1, maxRetries);
+                                    retries.increment();
+                                    pauseFor(delay);
+                                    return executeAsync(request, attempt + 1);
+                                });
+    }
+
+    /**
+     * Adjusts the pace to the rate limit headers of a response.
+     */
+    public void onResponse(Map<String, List<String>> headers) {
+        Optional<Long> remaining = numericHeader(headers, "RateLimit-Remaining");
+        Optional<Instant> reset = numericHeader(headers, "RateLimit-Reset").map(Instant::ofEpochSecond);
+        if (remaining.isEmpty() || reset.isEmpty()) {
+            return;
+        }
+        Duration untilReset = Duration.between(Instant.now(), reset.get());
+        if (untilReset.isNegative()) {
+            intervalNanos.set(0);
+        } else if (remaining.get() <= 0) {
+            pauseFor(untilReset);
+        } else if (remaining.get() < LOW_REMAINING_REQUESTS) {
+            intervalNanos.set(untilReset.toNanos() / remaining.get());
+        } else {
+            intervalNanos.set(0);
+        }
+    }
+
+    private void awaitSlot() {
+        long wait = reserveSlot();
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Takes the next slot, returning how long to wait for it in nanos.
+     */
+    private long reserveSlot() {
+        long now = System.nanoTime();
+        long interval = intervalNanos.get();
+        long slot = Math.max(now, nextSlotNanos.getAndUpdate(next -> Math.max(next, now) + interval));
+        long wait = slot - now;
+        if (wait > 0) {
+            throttledRequests.increment();
+            throttledNanos.add(wait);
+        }
+        return wait;
+    }
+
+    private void pauseFor(Duration delay) {
+        long resumeAt = System.nanoTime() + delay.toNanos();
+        nextSlotNanos.accumulateAndGet(resumeAt, Math::max);
+    }
+
+    private Supplier<Duration> backoff(int attempt) {
+        return () -> {
+            long ceiling = Math.min(maxBackoff.toMillis(), baseBackoff.toMillis() << Math.min(attempt, 20));
+            return Duration.ofMillis(ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1));
+        };
+    }
+
+    private static Optional<Duration> retryAfter(Map<String, List<String>> headers) {
+        // an http-date Retry-After is ignored in favour of the backoff
+        return numericHeader(headers, "Retry-After").map(Duration::ofSeconds);
+    }
+
+    private static Optional<Long> numericHeader(Map<String, List<String>> headers, String name) {
+        return header(headers, name)
+                // an empty value, or one overflowing a long, is no number either
+                .filter(value -> NUMBER.matcher(value).matches())
+                .map(Long::parseLong);
+    }
+
+    private static Optional<String> header(Map<String, List<String>> headers, String name) {
+        return Optional.ofNullable(headers)
+                       .flatMap(h -> h.entrySet()
+                                      .stream()
+                                      .filter(e -> e.getKey() != null && e.getKey().equalsIgnoreCase(name))
+                                      .flatMap(e -> e.getValue().stream())
+                                      .map(String::trim)
+                                      .filter(value -> !value.isEmpty())
+                                      .findFirst());
+    }
+
+    public Duration getThrottledTime() {
+        return Duration.ofNanos(throttledNanos.sum());
+    }
+
+    public long getThrottledRequests() {
+        return throttledRequests.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+}
@@ -0,0 +1,122 @@
+package antessio.common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of http responses, one json file per key.
+ * <p>
+ * Entries carrying an {@code ETag} or {@code Last-Modified} validator are meant to be revalidated with a
+ * conditional request; entries without validators are frozen: they are served as they are until the cache is
+ * invalidated.
+ * <p>
+ * Keys are looked up within a {@code scope}, e.g. the host and credentials the responses were fetched with, so that
+ * caches of different servers or users can share a directory without serving each other's responses. Only a hash of
+ * the scope and key ends up on disk.
+ */
+public class ResponseCache {
+
+    public record Entry(String body, String etag, String lastModified, Map<String, List<String>> headers) {
+
+        public static Entry frozen(String body) {
+            return new Entry(body, null, null, Map.of());
+        }
+
+        public Entry withBody(String body) {
+            return new Entry(body, etag, lastModified, headers);
+        }
+
+        public boolean revalidatable() {
+            return etag != null || lastModified != null;
+        }
+
+    }
+
+    private final Path directory;
+    private final String scope;
+    private final JsonConverter jsonConverter;
+
+    public ResponseCache(Path directory) {
+        this(directory, "");
+    }
+
+    public ResponseCache(Path directory, String scope) {
+        this.directory = directory;
+        this.scope = scope;
+        this.jsonConverter = new ObjectMapperJsonConverter();
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public Optional<Entry> get(String key) {
+        Path file = fileOf(key);
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(jsonConverter.fromJson(Files.readString(file), Entry.class));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void put(String key, Entry entry) {
+        Path file = fileOf(key);
+        // concurrent writers of the same key must never expose a half written file
+        Path partialFile = directory.resolve(file.getFileName() + "." + Thread.currentThread().threadId() + ".tmp");
+        try {
+            Files.writeString(partialFile, jsonConverter.toJson(entry));
+            FileUtils.moveReplacing(partialFile, file);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void invalidate(String key) {
+        try {
+            Files.deleteIfExists(fileOf(key));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void invalidateAll() {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Path fileOf(String key) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(scope.getBytes(StandardCharsets.UTF_8));
+            // the separator keeps ("ab", "c") and ("a", "bc") apart
+            sha.update((byte) 0);
+            byte[] digest = sha.digest(key.getBytes(StandardCharsets.UTF_8));
+            return directory.resolve(HexFormat.of().formatHex(digest) + ".json");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,72 @@
+package antessio.common;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A text template parsed once into literal segments and {@code §placeholder}s. Rendering writes the literals and
+ * the sections standing for the placeholders straight to a {@link Writer}, in template order, so the output is never
+ * built in memory. Placeholders without a section are written as they are.
+ */
+public class Template {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("§[a-z0-9_]+");
+
+    @FunctionalInterface
+    public interface Section {
+
+        void render(Writer out) throws IOException;
+
+    }
+
+    private record Segment(String text, boolean placeholder) {
+
+    }
+
+    private final List<Segment> segments;
+
+    private Template(List<Segment> segments) {
+        this.segments = segments;
+    }
+
+    public static Template compile(String template) {
+        List<Segment> segments = new ArrayList<>();
+        Matcher matcher = PLACEHOLDER.matcher(template);
+        int literalStart = 0;
+        while (matcher.find()) {
+            if (matcher.start() > literalStart) {
+                segments.add(new Segment(template.substring(literalStart, matcher.start()), false));
+            }
+            segments.add(new Segment(matcher.group(), true));
+            literalStart = matcher.end();
+        }
+        if (literalStart < template.length()) {
+            segments.add(new Segment(template.substring(literalStart), false));
+        }
+        return new Template(List.copyOf(segments));
+    }
+
+    public static Template load(String resourceName) {
+        return compile(FileUtils.loadFileAsString(resourceName));
+    }
+
+    /**
+     * Renders the template, {@code sections} being keyed by placeholder, {@code §} included.
+     */
+    public void render(Writer out, Map<String, Section> sections) throws IOException {
+        for (Segment segment : segments) {
+            Section section = segment.placeholder() ? sections.get(segment.text()) : null;
+            if (section == null) {
+                out.write(segment.text());
+            } else {
+                section.render(out);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+package antessio.common;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the {@code k} greatest values seen so far in a bounded min-heap.
+ * <p>
+ * Every value comes with a sequence number: on equal values the lower sequence ranks first, which is what a
+ * stable descending sort of the values in sequence order followed by a limit would return.
+ */
+public class TopK<T> {
+
+    private record Entry<T>(T value, long sequence) {
+
+    }
+
+    private final int k;
+    private final Comparator<Entry<T>> ranking;
+    private final PriorityQueue<Entry<T>> heap;
+
+    public TopK(int k, Comparator<T> comparator) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative, was " + k);
+        }
+        this.k = k;
+        this.ranking = Comparator.<Entry<T>, T>comparing(Entry::value, comparator)
+                                 .thenComparing(Entry::sequence, Comparator.reverseOrder());
+        this.heap = new PriorityQueue<>(Math.max(1, k), ranking);
+    }
+
+    public void add(T value, long sequence) {
+        offer(new Entry<>(value, sequence));
+    }
+
+    /**
+     * Adds the values kept by {@code other}, shifting their sequence numbers by {@code sequenceOffset}.
+     */
+    public void addAll(TopK<T> other, long sequenceOffset) {
+        other.heap.forEach(entry -> offer(new Entry<>(entry.value(), entry.sequence() + sequenceOffset)));
+    }
+
+    private void offer(Entry<T> entry) {
+        if (heap.size() < k) {
+            heap.add(entry);
+        } else if (k > 0 && ranking.compare(entry, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(entry);
+        }
+    }
+
+    /**
+     * The kept values, greatest first.
+     */
+    public List<T> toList() {
+        List<Entry<T>> entries = new ArrayList<>(heap);
+        entries.sort(ranking.reversed());
+        return entries.stream().map(Entry::value).toList();
+    }
+
+    public int k() {
+        return k;
+    }
+
+}
@@ -0,0 +1,19 @@
+package antessio.common.exception;
+
+import java.util.List;
+import java.util.Map;
+
+public class TooManyRequestsException extends RuntimeException {
+
+    private final Map<String, List<String>> headers;
+
+    public TooManyRequestsException(String message, Map<String, List<String>> headers) {
+        super(message);
+        this.headers = headers;
+    }
+
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+}
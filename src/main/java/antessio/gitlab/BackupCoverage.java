@@ -0,0 +1,48 @@
+package antessio.gitlab;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import antessio.common.FileUtils;
+import antessio.common.JsonConverter;
+
+/**
+ * What the crawl that wrote a backup listed: the merged merge requests of {@code team} created in {@code [from, to)},
+ * all of them when {@code complete}, or only part of them when the listing was cut by the size limit. Stored next to
+ * the backup, it is only trusted while it is not older than the backup, which another writer may have replaced.
+ */
+record BackupCoverage(List<String> team, Instant from, Instant to, boolean complete) {
+
+    static Path fileOf(Path backup) {
+        return backup.resolveSibling(backup.getFileName() + ".coverage");
+    }
+
+    static Optional<BackupCoverage> read(Path backup, JsonConverter jsonConverter) {
+        Path file = fileOf(backup);
+        try {
+            if (!Files.exists(file) || !Files.exists(backup)
+                || Files.getLastModifiedTime(file).compareTo(Files.getLastModifiedTime(backup)) < 0) {
+                return Optional.empty();
+            }
+            return Optional.of(jsonConverter.fromJson(Files.readString(file), BackupCoverage.class));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    void write(Path backup, JsonConverter jsonConverter) {
+        Path file = fileOf(backup);
+        Path partialFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.writeString(partialFile, jsonConverter.toJson(this));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        FileUtils.moveReplacing(partialFile, file);
+    }
+
+}
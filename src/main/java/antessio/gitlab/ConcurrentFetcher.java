@@ -0,0 +1,66 @@
+package antessio.gitlab;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Runs blocking GitLab calls on virtual threads, allowing at most {@code concurrency} of them in flight.
+ */
+public class ConcurrentFetcher implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+
+    public ConcurrentFetcher(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be positive, was " + concurrency);
+        }
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.permits = new Semaphore(concurrency);
+    }
+
+    /**
+     * Submits a call that counts against the concurrency limit.
+     */
+    public <T> Future<T> fetch(Supplier<T> call) {
+        return executor.submit(() -> {
+            permits.acquire();
+            try {
+                return call.get();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    /**
+     * Submits a task that only coordinates other fetches, so it does not hold a permit while waiting on them.
+     */
+    public <T> Future<T> submit(Supplier<T> task) {
+        return executor.submit(task::get);
+    }
+
+    public static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.close();
+    }
+
+}
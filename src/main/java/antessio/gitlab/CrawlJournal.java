@@ -0,0 +1,270 @@
+package antessio.gitlab;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.gitlab4j.api.utils.JacksonJson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import antessio.CodeReviewDataExporter.MergeRequest;
+import antessio.common.JsonConverter;
+
+/**
+ * Durable record of the progress of a crawl, one json line per step: the pages listed for each author, the
+ * authors whose listing is over and the merge requests already enriched. Every line is forced to disk before
+ * the step is considered done, so a crawl that fails halfway can be restarted without repeating finished work.
+ */
+class CrawlJournal implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CrawlJournal.class);
+
+    enum Kind {STARTED, PAGE_LISTED, AUTHOR_LISTED, MERGE_REQUEST_COMPLETED}
+
+    /**
+     * What the crawl is about; a journal is only resumed by a crawl of the same run. {@code relativeWindow} tells
+     * that the window was derived from now rather than asked for.
+     */
+    record Run(
+            List<String> team,
+            int size,
+            List<String> blackListProjectsIds,
+            boolean incremental,
+            int pageSize,
+            boolean fullDiffs,
+            Instant from,
+            Instant to,
+            boolean relativeWindow) {
+
+        /**
+         * Windows relative to now are compared by length only: they move between the interrupted run and the
+         * restart, which keeps crawling the window of the journal. Any other window must be the same.
+         */
+        boolean resumes(Run other) {
+            return team.equals(other.team)
+                   && size == other.size
+                   && blackListProjectsIds.equals(other.blackListProjectsIds)
+                   && incremental == other.incremental
+                   && pageSize == other.pageSize
+                   && fullDiffs == other.fullDiffs
+                   && (from.equals(other.from) && to.equals(other.to)
+                       || relativeWindow && other.relativeWindow && Duration.between(from, to).equals(Duration.between(other.from, other.to)));
+        }
+
+    }
+
+    record Entry(Kind kind, Run run, String author, Integer page, String listedPage, MergeRequest mergeRequest) {
+
+        static Entry started(Run run) {
+            return new Entry(Kind.STARTED, run, null, null, null, null);
+        }
+
+        static Entry pageListed(String author, int page, String listedPage) {
+            return new Entry(Kind.PAGE_LISTED, null, author, page, listedPage, null);
+        }
+
+        static Entry authorListed(String author) {
+            return new Entry(Kind.AUTHOR_LISTED, null, author, null, null, null);
+        }
+
+        static Entry mergeRequestCompleted(MergeRequest mergeRequest) {
+            return new Entry(Kind.MERGE_REQUEST_COMPLETED, null, null, null, null, mergeRequest);
+        }
+
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    private final JsonConverter jsonConverter;
+    private final JacksonJson gitlabJson;
+    private final Run run;
+    private final Map<String, List<String>> listedPagesByAuthor;
+    private final Set<String> listedAuthors;
+    private final Map<String, MergeRequest> completedByWebUrl;
+
+    private CrawlJournal(
+            Path file,
+            FileChannel channel,
+            JsonConverter jsonConverter,
+            Run run,
+            Map<String, List<String>> listedPagesByAuthor,
+            Set<String> listedAuthors,
+            Map<String, MergeRequest> completedByWebUrl) {
+        this.file = file;
+        this.channel = channel;
+        this.jsonConverter = jsonConverter;
+        this.gitlabJson = new JacksonJson();
+        this.run = run;
+        this.listedPagesByAuthor = listedPagesByAuthor;
+        this.listedAuthors = listedAuthors;
+        this.completedByWebUrl = completedByWebUrl;
+    }
+
+    /**
+     * Opens the journal at {@code file}, replaying it when it belongs to an interrupted crawl of the same run;
+     * any other journal is discarded.
+     */
+    static CrawlJournal open(Path file, Run run, JsonConverter jsonConverter) {
+        try {
+            List<Entry> entries = new ArrayList<>();
+            long validLength = Files.exists(file) ? replay(Files.readAllBytes(file), jsonConverter, entries) : 0;
+            boolean started = !entries.isEmpty() && entries.getFirst().kind() == Kind.STARTED;
+            boolean resumed = started && entries.getFirst().run().resumes(run);
+            if (started && !resumed) {
+                LOGGER.warn("discarding the journal {} of an interrupted crawl of {}, not the crawl of {}", file, entries.getFirst().run(), run);
+            }
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if (!resumed) {
+                entries.clear();
+                validLength = 0;
+            }
+            // drops the line torn by the interruption, if any, so appends start on a fresh line
+            channel.truncate(validLength);
+            channel.position(validLength);
+
+            // authors are listed concurrently, each by a single thread
+            Map<String, List<String>> listedPagesByAuthor = new ConcurrentHashMap<>();
+            Set<String> listedAuthors = ConcurrentHashMap.newKeySet();
+            Map<String, MergeRequest> completedByWebUrl = new ConcurrentHashMap<>();
+            for (Entry entry : entries) {
+                switch (entry.kind()) {
+                    case STARTED -> { }
+                    case PAGE_LISTED -> listedPagesByAuthor.computeIfAbsent(entry.author(), a -> new ArrayList<>()).add(entry.listedPage());
+                    case AUTHOR_LISTED -> listedAuthors.add(entry.author());
+                    case MERGE_REQUEST_COMPLETED -> completedByWebUrl.put(entry.mergeRequest().webUrl(), entry.mergeRequest());
+                }
+            }
+            CrawlJournal journal = new CrawlJournal(
+                    file,
+                    channel,
+                    jsonConverter,
+                    resumed ? entries.getFirst().run() : run,
+                    listedPagesByAuthor,
+                    listedAuthors,
+                    completedByWebUrl);
+            if (resumed) {
+                LOGGER.debug("resuming crawl from {}: {} authors listed, {} merge requests completed",
+                             file, listedAuthors.size(), completedByWebUrl.size());
+            } else {
+                journal.append(Entry.started(run));
+            }
+            return journal;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Parses the complete lines of {@code content} into {@code entries}, returning the length they span.
+     */
+    private static long replay(byte[] content, JsonConverter jsonConverter, List<Entry> entries) {
+        int lineStart = 0;
+        for (int i = 0; i < content.length; i++) {
+            if (content[i] != '\n') {
+                continue;
+            }
+            try {
+                entries.add(jsonConverter.fromJson(new String(content, lineStart, i - lineStart, StandardCharsets.UTF_8), Entry.class));
+            } catch (RuntimeException e) {
+                LOGGER.warn("unreadable journal line at offset {}, ignoring the rest of the journal", lineStart, e);
+                return lineStart;
+            }
+            lineStart = i + 1;
+        }
+        return lineStart;
+    }
+
+    /**
+     * The run recorded by the journal, whose window differs from the requested one when a crawl is resumed.
+     */
+    Run run() {
+        return run;
+    }
+
+    int pagesListed(String author) {
+        return listedPagesByAuthor.getOrDefault(author, List.of()).size();
+    }
+
+    List<org.gitlab4j.api.models.MergeRequest> listedMergeRequests(String author) {
+        List<org.gitlab4j.api.models.MergeRequest> listed = new ArrayList<>();
+        for (String page : listedPagesByAuthor.getOrDefault(author, List.of())) {
+            try {
+                listed.addAll(gitlabJson.unmarshalList(org.gitlab4j.api.models.MergeRequest.class, page));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return listed;
+    }
+
+    boolean isListed(String author) {
+        return listedAuthors.contains(author);
+    }
+
+    Optional<MergeRequest> completedMergeRequest(String webUrl) {
+        return Optional.ofNullable(completedByWebUrl.get(webUrl));
+    }
+
+    void pageListed(String author, int page, List<org.gitlab4j.api.models.MergeRequest> mergeRequests) {
+        String listedPage = gitlabJson.marshal(mergeRequests);
+        append(Entry.pageListed(author, page, listedPage));
+        listedPagesByAuthor.computeIfAbsent(author, a -> new ArrayList<>()).add(listedPage);
+    }
+
+    void authorListed(String author) {
+        append(Entry.authorListed(author));
+        listedAuthors.add(author);
+    }
+
+    void completed(MergeRequest mergeRequest) {
+        append(Entry.mergeRequestCompleted(mergeRequest));
+        completedByWebUrl.put(mergeRequest.webUrl(), mergeRequest);
+    }
+
+    /**
+     * Removes the journal once the crawl it records is safely stored.
+     */
+    void finish() {
+        close();
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private synchronized void append(Entry entry) {
+        ByteBuffer line = StandardCharsets.UTF_8.encode(jsonConverter.toJson(entry) + "\n");
+        try {
+            while (line.hasRemaining()) {
+                channel.write(line);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -1,21 +1,38 @@
 package antessio.gitlab;
 
-import static antessio.common.FileUtils.writeToFile;
+import static antessio.common.FileUtils.moveReplacing;
 
+import java.io.File;
+import java.nio.file.Path;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import org.gitlab4j.api.models.Diff;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import antessio.CodeReviewDataExporter;
+import antessio.DataExporterFromBackup;
+import antessio.classification.CommentClassifier;
+import antessio.common.JsonArrayWriter;
 import antessio.common.JsonConverter;
 import antessio.common.ObjectMapperJsonConverter;
 
@@ -29,6 +46,8 @@ public class GitLabExporter implements CodeReviewDataExporter {
     private final List<String> blackListProjectsIds;
     private final JsonConverter jsonConverter;
     private final String backupFile;
+    private final Options options;
+    private final CommentClassifier classifier = CommentClassifier.defaults();
     private Clock clock;
     private final List<MergeRequest> mergeRequests;
     private boolean initialized = false;
@@ -44,6 +63,18 @@ public class GitLabExporter implements CodeReviewDataExporter {
             List<String> blackListProjectsId,
             String backupFile,
             Clock clock) {
+        this(gitlab, team, durationInDays, size, blackListProjectsId, backupFile, clock, Options.defaults());
+    }
+
+    public GitLabExporter(
+            Gitlab gitlab,
+            List<String> team,
+            int durationInDays,
+            int size,
+            List<String> blackListProjectsId,
+            String backupFile,
+            Clock clock,
+            Options options) {
         this.gitlab = gitlab;
         this.team = team;
         this.durationInDays = durationInDays;
@@ -51,6 +82,7 @@ public class GitLabExporter implements CodeReviewDataExporter {
         this.blackListProjectsIds = blackListProjectsId;
         this.clock = clock;
         this.backupFile = backupFile;
+        this.options = options.withRelativeWindow(true);
         this.mergeRequests = new ArrayList<>();
         this.jsonConverter = new ObjectMapperJsonConverter();
         this.to = this.clock.instant();
@@ -65,6 +97,19 @@ public class GitLabExporter implements CodeReviewDataExporter {
             Instant from,
             Instant to,
             Clock clock) {
+        this(gitlab, team, size, blackListProjectsId, backupFile, from, to, clock, Options.defaults());
+    }
+
+    public GitLabExporter(
+            Gitlab gitlab,
+            List<String> team,
+            int size,
+            List<String> blackListProjectsId,
+            String backupFile,
+            Instant from,
+            Instant to,
+            Clock clock,
+            Options options) {
         this.gitlab = gitlab;
         this.team = team;
         this.durationInDays = Math.toIntExact(Duration.between(from, to).toDays());
@@ -72,6 +117,7 @@ public class GitLabExporter implements CodeReviewDataExporter {
         this.blackListProjectsIds = blackListProjectsId;
         this.clock = clock;
         this.backupFile = backupFile;
+        this.options = options;
         this.mergeRequests = new ArrayList<>();
         this.jsonConverter = new ObjectMapperJsonConverter();
         this.from = from;
@@ -81,55 +127,279 @@ public class GitLabExporter implements CodeReviewDataExporter {
     public void init() {
         Instant now = clock.instant();
         LOGGER.debug("initialization started at {} ", now);
-        java.util.Map<Long, org.gitlab4j.api.models.Project> projectMap = new HashMap<>();
-        this.team.stream()
-                 .map(gitlab::getAuthorId)
-                 .filter(Optional::isPresent)
-                 .map(Optional::get)
-                 .flatMap(authorId -> gitlab.getMergedMergeRequestsStream(from, to, authorId))
-                 .filter(mr -> !blackListProjectsIds.contains(mr.getProjectId().toString()))
-                 .limit(size)
-                 .forEach(mr -> {
-                     LOGGER.debug("processing mr {}", mr.getWebUrl());
-                     List<Comment> comments = new ArrayList<>();
-                     List<Approval> approvals = new ArrayList<>();
-                     gitlab.getComments(mr)
-                           .flatMap(comment -> comment.getNotes().stream())
-                             .filter(comment -> team.contains(comment.getAuthor().getUsername()))
-                             .filter(comment -> !comment.getSystem())
-                           .forEach(note -> comments.add(new Comment(note.getAuthor().getUsername(), note.getBody(), note.getCreatedAt().toInstant())));
-
-                     gitlab.getApprovals(mr.getProjectId(), mr.getIid())
-                           .forEach(approvedBy -> approvals.add(new Approval(approvedBy.getUsername())));
-
-                     Project project = Optional.ofNullable(projectMap.get(mr.getProjectId()))
-                                               .map(GitLabExporter::convertFromGitlabProject)
-                                               .orElseGet(() -> {
-                                                   org.gitlab4j.api.models.Project gitlabProject = gitlab.getProject(mr.getProjectId());
-                                                   projectMap.put(mr.getProjectId(), gitlabProject);
-                                                   return convertFromGitlabProject(gitlabProject);
-                                               });
-                     mergeRequests.add(new MergeRequest(
-                             mr.getIid().toString(),
-                             mr.getTitle(),
-                             mr.getWebUrl(),
-                             mr.getAuthor().getUsername(),
-                             mr.getCreatedAt().toInstant(),
-                             Optional.ofNullable(mr.getMergedAt()).map(Date::toInstant).orElse(null),
-                             mr.getChanges().size(),
-                             approvals,
-                             comments,
-                             project
-                     ));
-
-                 });
-        // backup
-        LOGGER.debug("storing backup to {} ", backupFile);
+        Path backupPath = Path.of(backupFile);
+        // journal: progress of the crawl, so that a failed run restarts where it stopped
+        CrawlJournal.Run run = new CrawlJournal.Run(
+                team, size, blackListProjectsIds, options.incremental(), options.pageSize(), options.fullDiffs(), from, to, options.relativeWindow());
+        try (CrawlJournal journal = CrawlJournal.open(backupPath.resolveSibling(backupPath.getFileName() + ".journal"), run, jsonConverter)) {
+            // a resumed crawl keeps the window of the journal, which may have moved since for a window relative to now
+            CrawlJournal.Run crawl = journal.run();
+            Optional<DataExporterFromBackup> previousBackup = options.incremental() ? previousBackup() : Optional.empty();
+            Optional<BackupCoverage> coverage = BackupCoverage.read(backupPath, jsonConverter);
+            Map<String, Instant> highWaterMarkByAuthor = previousBackup
+                    .map(previous -> highWaterMarkByAuthor(previous, coverage, crawl))
+                    .orElseGet(Map::of);
+            // backup: written while merge requests complete, then moved over the previous one
+            LOGGER.debug("storing backup to {} ", backupFile);
+            Path partialBackupPath = backupPath.resolveSibling(backupPath.getFileName() + ".tmp");
+            Set<String> listedUrls = new HashSet<>();
+            boolean complete;
+            Set<String> fetchedUrls = new HashSet<>();
+            Map<Long, Future<Project>> projectMap = new ConcurrentHashMap<>();
+            try (JsonArrayWriter<MergeRequest> backup = jsonConverter.toJsonArray(partialBackupPath);
+                 ConcurrentFetcher fetcher = new ConcurrentFetcher(options.concurrency())) {
+                // authors are listed concurrently, merge requests are taken in team order as their pages arrive
+                List<PagePrefetcher<org.gitlab4j.api.models.MergeRequest>> listings = team
+                        .stream()
+                        .map(username -> new PagePrefetcher<org.gitlab4j.api.models.MergeRequest>(
+                                fetcher,
+                                (pages, closed) -> listMergedMergeRequests(username, highWaterMarkByAuthor.get(username), journal, pages, closed)))
+                        .toList();
+                List<Future<MergeRequest>> enrichedMergeRequests;
+                try {
+                    enrichedMergeRequests = listings
+                            .stream()
+                            .flatMap(PagePrefetcher::stream)
+                            .filter(mr -> !isBlackListed(mr))
+                            // pages listed before an interruption may overlap with the ones listed after it
+                            .filter(mr -> listedUrls.add(mr.getWebUrl()))
+                            .limit(size)
+                            .map(mr -> journal.completedMergeRequest(mr.getWebUrl())
+                                              .<Future<MergeRequest>>map(CompletableFuture::completedFuture)
+                                              .orElseGet(() -> fetcher.submit(() -> {
+                                                  MergeRequest enriched = enrich(mr, fetcher, projectMap);
+                                                  journal.completed(enriched);
+                                                  return enriched;
+                                              })))
+                            .toList();
+                } finally {
+                    listings.forEach(PagePrefetcher::close);
+                }
+                // merge requests past the limit were not listed, the next incremental run can't rely on this one
+                complete = enrichedMergeRequests.size() < size && team.stream().allMatch(journal::isListed);
+                // futures are awaited in listing order so the result does not depend on completion order
+                enrichedMergeRequests.forEach(enriched -> {
+                    MergeRequest mr = ConcurrentFetcher.await(enriched);
+                    backup.append(mr);
+                    mergeRequests.add(mr);
+                    fetchedUrls.add(mr.webUrl());
+                });
+                previousBackup.ifPresent(previous -> keepNotFetchedAgain(previous, fetchedUrls, backup, crawl));
+            }
+            moveReplacing(partialBackupPath, backupPath);
+            new BackupCoverage(team, crawl.from(), crawl.to(), complete).write(backupPath, jsonConverter);
+            journal.finish();
+        } finally {
+            // also when the crawl fails, its restart can use what was loaded
+            gitlab.getMetadataCache().flush();
+        }
+        LOGGER.debug("throttled {} requests for {} in total, {} retries after rate limiting",
+                     gitlab.getRequestScheduler().getThrottledRequests(),
+                     gitlab.getRequestScheduler().getThrottledTime(),
+                     gitlab.getRequestScheduler().getRetries());
+        LOGGER.debug("metadata cache: {} hits, {} misses",
+                     gitlab.getMetadataCache().getHits(),
+                     gitlab.getMetadataCache().getMisses());
         initialized = true;
-        writeToFile(backupFile, jsonConverter.toJson(mergeRequests));
         LOGGER.debug("initialization finished at {} ", now);
     }
 
+    /**
+     * Lists the merge requests of the author page by page, starting after the last page recorded in the journal.
+     * The listing stops early once the author alone has {@code size} merge requests, more could not be used.
+     * It runs on its own thread without taking a permit of the fetcher, so that it does not queue behind the
+     * enrichment of the merge requests already listed; the pages after the first one are requested a few at a time,
+     * and the listings of all authors share a bounded number of requests in flight.
+     */
+    private void listMergedMergeRequests(
+            String username,
+            Instant updatedAfter,
+            CrawlJournal journal,
+            Consumer<List<org.gitlab4j.api.models.MergeRequest>> pages,
+            BooleanSupplier closed) {
+        List<org.gitlab4j.api.models.MergeRequest> journaled = journal.listedMergeRequests(username);
+        pages.accept(journaled);
+        long listed = journaled.stream().filter(mr -> !isBlackListed(mr)).count();
+        if (journal.isListed(username) || listed >= size || closed.getAsBoolean()) {
+            return;
+        }
+        Optional<Long> authorId = gitlab.getAuthorId(username);
+        if (authorId.isEmpty()) {
+            journal.authorListed(username);
+            return;
+        }
+        int page = journal.pagesListed(username) + 1;
+        try (Stream<List<org.gitlab4j.api.models.MergeRequest>> listing = gitlab.getMergedMergeRequestsPages(
+                journal.run().from(), journal.run().to(), authorId.get(), updatedAfter, options.pageSize(), page)) {
+            Iterator<List<org.gitlab4j.api.models.MergeRequest>> listedPages = listing.iterator();
+            for (; listedPages.hasNext() && listed < size && !closed.getAsBoolean(); page++) {
+                List<org.gitlab4j.api.models.MergeRequest> mergeRequestsOfPage = listedPages.next();
+                journal.pageListed(username, page, mergeRequestsOfPage);
+                pages.accept(mergeRequestsOfPage);
+                listed += mergeRequestsOfPage.stream().filter(mr -> !isBlackListed(mr)).count();
+            }
+            if (!listedPages.hasNext()) {
+                journal.authorListed(username);
+            }
+        }
+    }
+
+    private boolean isBlackListed(org.gitlab4j.api.models.MergeRequest mr) {
+        return blackListProjectsIds.contains(mr.getProjectId().toString());
+    }
+
+    private Optional<DataExporterFromBackup> previousBackup() {
+        if (!new File(backupFile).exists()) {
+            LOGGER.debug("no backup found at {}, running a full export", backupFile);
+            return Optional.empty();
+        }
+        return Optional.of(new DataExporterFromBackup(backupFile));
+    }
+
+    /**
+     * For each author, the point in time after which its merge requests have to be listed again; authors without
+     * one are listed in full. Marks are only known inside the part of the window the previous crawl listed
+     * completely: none when it did not reach back to {@code from} or was cut by the size limit, and capped to its
+     * end when the window goes past it, so that merge requests created since are all listed.
+     */
+    private Map<String, Instant> highWaterMarkByAuthor(
+            DataExporterFromBackup backup,
+            Optional<BackupCoverage> coverage,
+            CrawlJournal.Run crawl) {
+        Instant from = crawl.from();
+        Instant to = crawl.to();
+        Optional<BackupCoverage> usable = coverage.filter(BackupCoverage::complete)
+                                                  .filter(covered -> !from.isBefore(covered.from()));
+        if (usable.isEmpty()) {
+            LOGGER.debug("the backup does not cover {} - {}, listing every merge request again", from, to);
+            return Map.of();
+        }
+        BackupCoverage covered = usable.get();
+        Instant coveredTo = to.isAfter(covered.to()) ? covered.to() : to;
+        try (Stream<MergeRequest> previous = backup.streamMergeRequests()) {
+            Map<String, Instant> marks = previous
+                    .filter(mr -> covered.team().contains(mr.author()))
+                    .filter(mr -> !mr.createdAt().isBefore(from) && mr.createdAt().isBefore(coveredTo))
+                    .collect(Collectors.toMap(
+                            MergeRequest::author,
+                            GitLabExporter::highWaterMark,
+                            (a, b) -> a.isAfter(b) ? a : b));
+            marks.replaceAll((author, mark) -> mark.isAfter(coveredTo) && coveredTo.isBefore(to) ? coveredTo : mark);
+            return marks;
+        }
+    }
+
+    /**
+     * The latest point in time a merge request of the author is known to be in the backup: only merge requests
+     * updated after it (e.g. merged afterwards) need to be fetched again.
+     */
+    private static Instant highWaterMark(MergeRequest mr) {
+        return Optional.ofNullable(mr.mergedAt())
+                       .filter(mergedAt -> mergedAt.isAfter(mr.createdAt()))
+                       .orElse(mr.createdAt());
+    }
+
+    /**
+     * Copies the merge requests of the previous backup that were not fetched again; a merge request is identified
+     * by its web url since iids are only unique per project.
+     */
+    private void keepNotFetchedAgain(
+            DataExporterFromBackup previousBackup,
+            Set<String> fetchedUrls,
+            JsonArrayWriter<MergeRequest> backup,
+            CrawlJournal.Run crawl) {
+        try (Stream<MergeRequest> previous = previousBackup.streamMergeRequests()) {
+            AtomicInteger kept = new AtomicInteger();
+            previous.filter(mr -> !fetchedUrls.contains(mr.webUrl()))
+                    .forEach(mr -> {
+                        backup.append(mr);
+                        if (team.contains(mr.author()) && !mr.createdAt().isBefore(crawl.from()) && mr.createdAt().isBefore(crawl.to())) {
+                            mergeRequests.add(mr);
+                            kept.incrementAndGet();
+                        }
+                    });
+            LOGGER.debug("fetched {} merge requests, {} more in range were already in the backup", fetchedUrls.size(), kept);
+        }
+    }
+
+    private MergeRequest enrich(
+            org.gitlab4j.api.models.MergeRequest mr,
+            ConcurrentFetcher fetcher,
+            Map<Long, Future<Project>> projectMap) {
+        LOGGER.debug("processing mr {}", mr.getWebUrl());
+        Future<ChangeStats> changes = fetcher.fetch(() -> options.fullDiffs() ? diffStats(mr) : changesCount(mr));
+        Future<List<Comment>> comments = fetcher.fetch(() -> gitlab.getComments(mr)
+                                                                   .flatMap(comment -> comment.getNotes().stream())
+                                                                   .filter(comment -> team.contains(comment.getAuthor().getUsername()))
+                                                                   .filter(comment -> !comment.getSystem())
+                                                                   .map(note -> new Comment(note.getAuthor().getUsername(), note.getBody(), note.getCreatedAt().toInstant()))
+                                                                   .map(comment -> comment.withCategories(classifier.classify(comment)))
+                                                                   .toList());
+        Future<List<Approval>> approvals = fetcher.fetch(() -> gitlab.getApprovals(mr)
+                                                                     .stream()
+                                                                     .map(approvedBy -> new Approval(approvedBy.getUsername()))
+                                                                     .toList());
+        Future<Project> project = projectMap.computeIfAbsent(
+                mr.getProjectId(),
+                projectId -> fetcher.fetch(() -> convertFromGitlabProject(gitlab.getProject(projectId))));
+        return new MergeRequest(
+                mr.getIid().toString(),
+                mr.getTitle(),
+                mr.getWebUrl(),
+                mr.getAuthor().getUsername(),
+                mr.getCreatedAt().toInstant(),
+                Optional.ofNullable(mr.getMergedAt()).map(Date::toInstant).orElse(null),
+                ConcurrentFetcher.await(changes).files(),
+                new ArrayList<>(ConcurrentFetcher.await(approvals)),
+                new ArrayList<>(ConcurrentFetcher.await(comments)),
+                ConcurrentFetcher.await(project),
+                ConcurrentFetcher.await(changes).linesAdded(),
+                ConcurrentFetcher.await(changes).linesRemoved()
+        );
+    }
+
+    record ChangeStats(int files, Integer linesAdded, Integer linesRemoved) {
+
+    }
+
+    /**
+     * Files changed according to GitLab, which caps the count (e.g. {@code "1000+"}) for huge merge requests.
+     */
+    private ChangeStats changesCount(org.gitlab4j.api.models.MergeRequest mr) {
+        int files = Optional.ofNullable(gitlab.getMergeRequest(mr).getChangesCount())
+                            .map(count -> count.replace("+", ""))
+                            .map(Integer::parseInt)
+                            .orElse(0);
+        return new ChangeStats(files, null, null);
+    }
+
+    private ChangeStats diffStats(org.gitlab4j.api.models.MergeRequest mr) {
+        return diffStats(gitlab.getMergeRequestChanges(mr).getChanges());
+    }
+
+    /**
+     * Counts the lines of the hunks only: GitLab diffs start right at the first {@code @@}, and file headers
+     * ({@code ---}/{@code +++}), when present, come before it. Inside a hunk a line starting with {@code ---} is a
+     * removed line starting with {@code --}.
+     */
+    static ChangeStats diffStats(List<Diff> diffs) {
+        int linesAdded = 0;
+        int linesRemoved = 0;
+        for (Diff diff : diffs) {
+            boolean inHunk = false;
+            for (String line : Optional.ofNullable(diff.getDiff()).orElse("").split("\n")) {
+                if (line.startsWith("@@")) {
+                    inHunk = true;
+                } else if (inHunk && line.startsWith("+")) {
+                    linesAdded++;
+                } else if (inHunk && line.startsWith("-")) {
+                    linesRemoved++;
+                }
+            }
+        }
+        return new ChangeStats(diffs.size(), linesAdded, linesRemoved);
+    }
+
     private static Project convertFromGitlabProject(org.gitlab4j.api.models.Project p) {
         return new Project(p.getId().toString(), p.getName(), p.getWebUrl());
     }
@@ -143,6 +413,9 @@ public class GitLabExporter implements CodeReviewDataExporter {
         return mergeRequests;
     }
 
+    /**
+     * The requested window; a crawl resumed from its journal covers the window of the interrupted run instead.
+     */
     public Instant getFrom() {
         return from;
     }
@@ -151,4 +424,53 @@ public class GitLabExporter implements CodeReviewDataExporter {
         return to;
     }
 
+    /**
+     * Tuning knobs of the export; {@code concurrency} bounds the GitLab calls in flight at the same time,
+     * {@code incremental} only fetches what is missing from the existing backup and merges it in, {@code pageSize}
+     * is the number of merge requests listed per request, at most {@link #MAX_PAGE_SIZE}. The changed files are
+     * counted from the merge request alone unless {@code fullDiffs} asks to download the diffs, which also gives
+     * the lines added and removed.
+     */
+    /**
+     * {@code relativeWindow} tells that the window is derived from now, e.g. the last months: an interrupted crawl is
+     * then resumed over its own window by a restart whose window has moved since, as long as it has the same length.
+     */
+    public record Options(int concurrency, boolean incremental, int pageSize, boolean fullDiffs, boolean relativeWindow) {
+
+        public static final int DEFAULT_CONCURRENCY = 8;
+        public static final int DEFAULT_PAGE_SIZE = 20;
+        public static final int MAX_PAGE_SIZE = 100;
+
+        public Options {
+            if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+                throw new IllegalArgumentException("page size must be between 1 and %d, was %d".formatted(MAX_PAGE_SIZE, pageSize));
+            }
+        }
+
+        public static Options defaults() {
+            return new Options(DEFAULT_CONCURRENCY, false, DEFAULT_PAGE_SIZE, false, false);
+        }
+
+        public Options withConcurrency(int concurrency) {
+            return new Options(concurrency, incremental, pageSize, fullDiffs, relativeWindow);
+        }
+
+        public Options withIncremental(boolean incremental) {
+            return new Options(concurrency, incremental, pageSize, fullDiffs, relativeWindow);
+        }
+
+        public Options withPageSize(int pageSize) {
+            return new Options(concurrency, incremental, pageSize, fullDiffs, relativeWindow);
+        }
+
+        public Options withFullDiffs(boolean fullDiffs) {
+            return new Options(concurrency, incremental, pageSize, fullDiffs, relativeWindow);
+        }
+
+        public Options withRelativeWindow(boolean relativeWindow) {
+            return new Options(concurrency, incremental, pageSize, fullDiffs, relativeWindow);
+        }
+
+    }
+
 }
@@ -0,0 +1,329 @@
+package antessio.gitlab;
+
+import static antessio.common.FileUtils.moveReplacing;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import antessio.CodeReviewDataExporter;
+import antessio.classification.CommentClassifier;
+import antessio.common.JsonArrayWriter;
+import antessio.common.JsonConverter;
+import antessio.common.ObjectMapperJsonConverter;
+
+/**
+ * Exports the merged merge requests of the team through the GraphQL API: a single query lists a page of merge
+ * requests of an author together with their approvals, notes and diff stats, where the REST export needs a few
+ * calls per merge request. Only the notes of merge requests with more than one page of them are fetched apart.
+ * <p>
+ * The backup is written as by {@link GitLabExporter}, but the crawl is neither journaled nor incremental.
+ */
+public class GitLabGraphQLExporter implements CodeReviewDataExporter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(GitLabGraphQLExporter.class);
+
+    // nested connections count against the complexity limit of a query, pages of merge requests should stay small
+    static final int NOTES_PAGE_SIZE = 50;
+
+    private static final String MERGE_REQUESTS_QUERY = """
+            query($username: String!, $createdAfter: Time, $createdBefore: Time, $first: Int, $after: String, $notes: Int) {
+              user(username: $username) {
+                authoredMergeRequests(state: merged, createdAfter: $createdAfter, createdBefore: $createdBefore,
+                                      sort: CREATED_DESC, first: $first, after: $after) {
+                  pageInfo { hasNextPage endCursor }
+                  nodes {
+                    id iid title webUrl createdAt mergedAt
+                    author { username }
+                    project { id name webUrl }
+                    diffStatsSummary { additions deletions fileCount }
+                    approvedBy { nodes { username } }
+                    notes(first: $notes) {
+                      pageInfo { hasNextPage endCursor }
+                      nodes { system body createdAt author { username } }
+                    }
+                  }
+                }
+              }
+            }
+            """;
+
+    private static final String NOTES_QUERY = """
+            query($id: MergeRequestID!, $after: String, $notes: Int) {
+              mergeRequest(id: $id) {
+                notes(first: $notes, after: $after) {
+                  pageInfo { hasNextPage endCursor }
+                  nodes { system body createdAt author { username } }
+                }
+              }
+            }
+            """;
+
+    private final Gitlab gitlab;
+    private final List<String> team;
+    private final int size;
+    private final List<String> blackListProjectsIds;
+    private final String backupFile;
+    private final Instant from;
+    private final Instant to;
+    private final GitLabExporter.Options options;
+    private final JsonConverter jsonConverter;
+    private final CommentClassifier classifier = CommentClassifier.defaults();
+    private final Map<String, Project> projects = new ConcurrentHashMap<>();
+    private final AtomicInteger queries = new AtomicInteger();
+    private final List<MergeRequest> mergeRequests;
+    private boolean initialized = false;
+
+    public GitLabGraphQLExporter(
+            Gitlab gitlab,
+            List<String> team,
+            int size,
+            List<String> blackListProjectsId,
+            String backupFile,
+            Instant from,
+            Instant to) {
+        this(gitlab, team, size, blackListProjectsId, backupFile, from, to, GitLabExporter.Options.defaults());
+    }
+
+    /**
+     * Of the {@code options}, {@code concurrency} bounds the queries fetching the remaining notes and
+     * {@code pageSize} is the number of merge requests per query; lines added and removed are always known.
+     */
+    public GitLabGraphQLExporter(
+            Gitlab gitlab,
+            List<String> team,
+            int size,
+            List<String> blackListProjectsId,
+            String backupFile,
+            Instant from,
+            Instant to,
+            GitLabExporter.Options options) {
+        if (options.incremental()) {
+            throw new IllegalArgumentException("incremental export is not supported through GraphQL");
+        }
+        this.gitlab = gitlab;
+        this.team = team;
+        this.size = size;
+        this.blackListProjectsIds = blackListProjectsId;
+        this.backupFile = backupFile;
+        this.from = from;
+        this.to = to;
+        this.options = options;
+        this.jsonConverter = new ObjectMapperJsonConverter();
+        this.mergeRequests = new ArrayList<>();
+    }
+
+    public void init() {
+        LOGGER.debug("initialization started, storing backup to {}", backupFile);
+        Path backupPath = Path.of(backupFile);
+        Path partialBackupPath = backupPath.resolveSibling(backupPath.getFileName() + ".tmp");
+        Set<String> listedUrls = new HashSet<>();
+        try (JsonArrayWriter<MergeRequest> backup = jsonConverter.toJsonArray(partialBackupPath);
+             ConcurrentFetcher fetcher = new ConcurrentFetcher(options.concurrency())) {
+            List<PagePrefetcher<MergeRequestNode>> listings = team
+                    .stream()
+                    .map(username -> new PagePrefetcher<MergeRequestNode>(
+                            fetcher,
+                            (pages, closed) -> listMergedMergeRequests(username, pages, closed)))
+                    .toList();
+            List<Future<MergeRequest>> convertedMergeRequests;
+            try {
+                convertedMergeRequests = listings
+                        .stream()
+                        .flatMap(PagePrefetcher::stream)
+                        .filter(mr -> !isBlackListed(mr))
+                        .filter(mr -> listedUrls.add(mr.webUrl()))
+                        .limit(size)
+                        .map(mr -> mr.notes().pageInfo().hasNextPage()
+                                ? fetcher.fetch(() -> convert(mr, remainingNotes(mr)))
+                                : CompletableFuture.completedFuture(convert(mr, List.of())))
+                        .toList();
+            } finally {
+                listings.forEach(PagePrefetcher::close);
+            }
+            convertedMergeRequests.forEach(converted -> {
+                MergeRequest mr = ConcurrentFetcher.await(converted);
+                backup.append(mr);
+                mergeRequests.add(mr);
+            });
+        }
+        moveReplacing(partialBackupPath, backupPath);
+        LOGGER.debug("exported {} merge requests with {} queries", mergeRequests.size(), queries);
+        initialized = true;
+    }
+
+    /**
+     * Lists the merge requests of the author a page at a time, until the author alone has {@code size} of them.
+     */
+    private void listMergedMergeRequests(String username, Consumer<List<MergeRequestNode>> pages, BooleanSupplier closed) {
+        String cursor = null;
+        long listed = 0;
+        boolean hasNextPage = true;
+        while (hasNextPage && listed < size && !closed.getAsBoolean()) {
+            Map<String, Object> variables = new HashMap<>();
+            variables.put("username", username);
+            variables.put("createdAfter", from);
+            variables.put("createdBefore", to);
+            variables.put("first", options.pageSize());
+            variables.put("after", cursor);
+            variables.put("notes", NOTES_PAGE_SIZE);
+            UserNode user = query(MERGE_REQUESTS_QUERY, variables, MergeRequestsResponse.class).data().user();
+            if (user == null) {
+                LOGGER.debug("user {} not found", username);
+                return;
+            }
+            Connection<MergeRequestNode> page = user.authoredMergeRequests();
+            pages.accept(page.nodes());
+            listed += page.nodes().stream().filter(mr -> !isBlackListed(mr)).count();
+            hasNextPage = page.pageInfo().hasNextPage();
+            cursor = page.pageInfo().endCursor();
+        }
+    }
+
+    /**
+     * The notes following the first page, which came with the merge request.
+     */
+    private List<NoteNode> remainingNotes(MergeRequestNode mr) {
+        List<NoteNode> notes = new ArrayList<>();
+        PageInfo pageInfo = mr.notes().pageInfo();
+        while (pageInfo.hasNextPage()) {
+            Map<String, Object> variables = new HashMap<>();
+            variables.put("id", mr.id());
+            variables.put("after", pageInfo.endCursor());
+            variables.put("notes", NOTES_PAGE_SIZE);
+            Connection<NoteNode> page = query(NOTES_QUERY, variables, NotesResponse.class).data().mergeRequest().notes();
+            notes.addAll(page.nodes());
+            pageInfo = page.pageInfo();
+        }
+        return notes;
+    }
+
+    private <T extends GraphQLResponse> T query(String query, Map<String, Object> variables, Class<T> responseClass) {
+        queries.incrementAndGet();
+        return gitlab.graphQL(query, variables, responseClass);
+    }
+
+    private MergeRequest convert(MergeRequestNode mr, List<NoteNode> remainingNotes) {
+        Optional<DiffStatsSummary> diffStats = Optional.ofNullable(mr.diffStatsSummary());
+        return new MergeRequest(
+                mr.iid(),
+                mr.title(),
+                mr.webUrl(),
+                mr.author().username(),
+                mr.createdAt(),
+                mr.mergedAt(),
+                diffStats.map(DiffStatsSummary::fileCount).orElse(0),
+                mr.approvedBy()
+                  .nodes()
+                  .stream()
+                  .map(approvedBy -> new Approval(approvedBy.username()))
+                  .toList(),
+                Stream.concat(mr.notes().nodes().stream(), remainingNotes.stream())
+                      .filter(note -> note.author() != null && team.contains(note.author().username()))
+                      .filter(note -> !note.system())
+                      .map(note -> new Comment(note.author().username(), note.body(), note.createdAt()))
+                      .map(comment -> comment.withCategories(classifier.classify(comment)))
+                      .toList(),
+                Optional.ofNullable(mr.project())
+                        .map(project -> projects.computeIfAbsent(
+                                projectId(project),
+                                id -> new Project(id, project.name(), project.webUrl())))
+                        .orElse(null),
+                diffStats.map(DiffStatsSummary::additions).orElse(null),
+                diffStats.map(DiffStatsSummary::deletions).orElse(null));
+    }
+
+    private boolean isBlackListed(MergeRequestNode mr) {
+        return mr.project() != null && blackListProjectsIds.contains(projectId(mr.project()));
+    }
+
+    /**
+     * The numeric id of the project, as used by the REST API, out of its global id {@code gid://gitlab/Project/<id>}.
+     */
+    private static String projectId(ProjectNode project) {
+        return project.id().substring(project.id().lastIndexOf('/') + 1);
+    }
+
+    @Override
+    public List<MergeRequest> getMergeRequests() {
+        if (!initialized) {
+            init();
+        }
+        return mergeRequests;
+    }
+
+    private record MergeRequestsResponse(MergeRequestsData data, List<GraphQLResponse.Error> errors) implements GraphQLResponse {
+
+    }
+
+    private record MergeRequestsData(UserNode user) {
+
+    }
+
+    private record UserNode(Connection<MergeRequestNode> authoredMergeRequests) {
+
+    }
+
+    private record NotesResponse(NotesData data, List<GraphQLResponse.Error> errors) implements GraphQLResponse {
+
+    }
+
+    private record NotesData(MergeRequestNode mergeRequest) {
+
+    }
+
+    private record Connection<T>(PageInfo pageInfo, List<T> nodes) {
+
+    }
+
+    private record PageInfo(boolean hasNextPage, String endCursor) {
+
+    }
+
+    private record MergeRequestNode(
+            String id,
+            String iid,
+            String title,
+            String webUrl,
+            Instant createdAt,
+            Instant mergedAt,
+            UserRef author,
+            ProjectNode project,
+            DiffStatsSummary diffStatsSummary,
+            Connection<UserRef> approvedBy,
+            Connection<NoteNode> notes) {
+
+    }
+
+    private record UserRef(String username) {
+
+    }
+
+    private record ProjectNode(String id, String name, String webUrl) {
+
+    }
+
+    private record DiffStatsSummary(int additions, int deletions, int fileCount) {
+
+    }
+
+    private record NoteNode(boolean system, String body, Instant createdAt, UserRef author) {
+
+    }
+
+}
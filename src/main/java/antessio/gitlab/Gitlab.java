@@ -1,94 +1,307 @@
 package antessio.gitlab;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
-import java.util.Date;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 import org.gitlab4j.api.Constants;
-import org.gitlab4j.api.GitLabApi;
-import org.gitlab4j.api.GitLabApiException;
 import org.gitlab4j.api.models.AbstractUser;
 import org.gitlab4j.api.models.Discussion;
 import org.gitlab4j.api.models.MergeRequest;
-import org.gitlab4j.api.models.MergeRequestFilter;
 import org.gitlab4j.api.models.Project;
 import org.gitlab4j.api.models.User;
+import org.gitlab4j.api.utils.JacksonJson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import antessio.common.HttpClient;
+import antessio.common.MetadataCache;
+import antessio.common.ObjectMapperJsonConverter;
+import antessio.common.RequestScheduler;
+import antessio.common.ResponseCache;
 
 public class Gitlab {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Gitlab.class);
 
+    private static final int MAX_PAGE_SIZE = 100;
+    // pages of a listing requested ahead of the one being processed
+    private static final int PAGES_AHEAD = 4;
+    // listing requests in flight over all the authors: listings run apart from the calls bounded by the concurrency
+    // of the exporter, they would otherwise have PAGES_AHEAD requests in flight each
+    static final int LISTING_REQUESTS = 8;
+    public static final Duration DEFAULT_METADATA_TTL = Duration.ofDays(1);
 
-    private final GitLabApi gitLabApi;
+    private final HttpClient restClient;
+    private final HttpClient listingClient;
+    private final HttpClient graphQLClient;
+    private final JacksonJson gitlabJson;
+    private final Map<String, List<String>> authHeaders;
+    private final Map<String, List<String>> graphQLAuthHeaders;
+    private final ResponseCache responseCache;
+    private final MetadataCache metadataCache;
+    private final RequestScheduler requestScheduler;
+    private final Semaphore listingRequests = new Semaphore(LISTING_REQUESTS);
 
     public Gitlab(String authToken, String gitlabHost) {
-        this.gitLabApi = new GitLabApi(gitlabHost, authToken);
+        this(authToken, gitlabHost, null);
+    }
+
+    public Gitlab(String authToken, String gitlabHost, Path cacheDirectory) {
+        this(authToken, gitlabHost, cacheDirectory, DEFAULT_METADATA_TTL);
+    }
+
+    /**
+     * With a {@code cacheDirectory}, resources of merged merge requests (changes, discussions, approvals) are
+     * stored on disk and never fetched again until {@link #invalidateCache()}, while projects and users are
+     * revalidated with conditional requests. Listings of merge requests are never stored.
+     * <p>
+     * Projects and user ids are not even revalidated for {@code metadataTtl}, users not found for at most
+     * {@link MetadataCache#DEFAULT_NEGATIVE_TTL}: they are kept in a {@link MetadataCache}, stored next to the cache
+     * directory when there is one.
+     */
+    public Gitlab(String authToken, String gitlabHost, Path cacheDirectory, Duration metadataTtl) {
+        // every request goes through these clients, paced by a single scheduler: they share the rate limit of the token
+        this.requestScheduler = new RequestScheduler();
+        this.gitlabJson = new JacksonJson();
+        this.authHeaders = Map.of("PRIVATE-TOKEN", List.of(authToken));
+        this.graphQLAuthHeaders = Map.of("Authorization", List.of("Bearer " + authToken));
+        // responses depend on what the token can see: another host or token must not be served them
+        this.responseCache = Optional.ofNullable(cacheDirectory)
+                                     .map(directory -> new ResponseCache(directory, gitlabHost.replaceAll("/+$", "") + "\n" + authToken))
+                                     .orElse(null);
+        this.metadataCache = new MetadataCache(
+                Optional.ofNullable(cacheDirectory)
+                        .map(directory -> directory.resolveSibling(directory.getFileName() + "_metadata.json"))
+                        .orElse(null),
+                metadataTtl,
+                Clock.systemUTC());
+        this.restClient = new HttpClient(
+                gitlabHost.replaceAll("/+$", "") + "/api/v4",
+                new ObjectMapperJsonConverter(gitlabJson.getObjectMapper()),
+                responseCache,
+                requestScheduler);
+        // listings filter on dates derived from now, so their urls are never requested twice, and discussions are
+        // frozen once their merge request is merged: storing their pages would only fill the cache
+        this.listingClient = new HttpClient(
+                gitlabHost.replaceAll("/+$", "") + "/api/v4",
+                new ObjectMapperJsonConverter(gitlabJson.getObjectMapper()),
+                null,
+                requestScheduler);
+        // GraphQL speaks camelCase, unlike the REST models of gitlab4j
+        this.graphQLClient = new HttpClient(
+                gitlabHost.replaceAll("/+$", "") + "/api",
+                new ObjectMapperJsonConverter(),
+                null,
+                requestScheduler);
+    }
+
+    public List<User> getApprovals(MergeRequest mr) {
+        return frozenListIfMerged(
+                mr,
+                "projects/%d/merge_requests/%d/approvals".formatted(mr.getProjectId(), mr.getIid()),
+                User.class,
+                () -> getApprovals(mr.getProjectId(), mr.getIid()));
     }
 
     public List<User> getApprovals(long projectId, long mrIid) {
+        return restClient.get(
+                MergeRequest.class,
+                "projects/%d/merge_requests/%d/approvals".formatted(projectId, mrIid),
+                Map.of(),
+                authHeaders).getApprovedBy();
+    }
+    public Stream<MergeRequest> getMergedMergeRequestsStream(Instant from, Instant to, Long userId) {
+        return getMergedMergeRequestsStream(from, to, userId, null);
+    }
 
-        try {
-            return gitLabApi.getMergeRequestApi().getApprovals(projectId, mrIid).getApprovedBy();
-        } catch (GitLabApiException e) {
-            throw new RuntimeException(e);
+    public Stream<MergeRequest> getMergedMergeRequestsStream(Instant from, Instant to, Long userId, Instant updatedAfter) {
+        return getMergedMergeRequestsPages(from, to, userId, updatedAfter, MAX_PAGE_SIZE, 1).flatMap(List::stream);
+    }
+
+    /**
+     * Pages of the merged merge requests of the author, newest first, from {@code firstPage} on. The pages after
+     * the first one are requested concurrently, a few ahead of the one consumed: close the stream when done. All the
+     * listings share {@link #LISTING_REQUESTS} requests in flight.
+     */
+    public Stream<List<MergeRequest>> getMergedMergeRequestsPages(
+            Instant from,
+            Instant to,
+            Long userId,
+            Instant updatedAfter,
+            int pageSize,
+            int firstPage) {
+        Map<String, Object> filter = new LinkedHashMap<>();
+        filter.put("author_id", userId);
+        filter.put("state", Constants.MergeRequestState.MERGED);
+        filter.put("created_after", from);
+        filter.put("created_before", to);
+        filter.put("order_by", Constants.MergeRequestOrderBy.CREATED_AT);
+        filter.put("sort", Constants.SortOrder.DESC);
+        filter.put("scope", Constants.MergeRequestScope.ALL);
+        Optional.ofNullable(updatedAfter)
+                .ifPresent(instant -> filter.put("updated_after", instant));
+        filter.put("per_page", pageSize);
+        return listingClient.getPages(MergeRequest[].class, "merge_requests", filter, authHeaders, firstPage, PAGES_AHEAD, listingRequests);
+    }
+
+    /**
+     * The merge request alone, without diffs: its {@code changes_count} is the cheap way to know how many files
+     * it changes.
+     */
+    public MergeRequest getMergeRequest(MergeRequest mr) {
+        return frozenIfMerged(
+                mr,
+                "projects/%d/merge_requests/%d".formatted(mr.getProjectId(), mr.getIid()),
+                MergeRequest.class,
+                () -> getMergeRequest(mr.getProjectId(), mr.getIid()));
+    }
+
+    public MergeRequest getMergeRequest(Long projectId, Long mrIid) {
+        return restClient.get(MergeRequest.class, "projects/%d/merge_requests/%d".formatted(projectId, mrIid), Map.of(), authHeaders);
+    }
+
+    public MergeRequest getMergeRequestChanges(MergeRequest mr) {
+        return frozenIfMerged(
+                mr,
+                "projects/%d/merge_requests/%d/changes".formatted(mr.getProjectId(), mr.getIid()),
+                MergeRequest.class,
+                () -> getMergeRequestChanges(mr.getProjectId(), mr.getIid()));
+    }
+
+    public MergeRequest getMergeRequestChanges(Long projectId, Long mrIid) {
+        return restClient.get(
+                MergeRequest.class,
+                "projects/%d/merge_requests/%d/changes".formatted(projectId, mrIid),
+                Map.of(),
+                authHeaders);
+    }
+
+    public Optional<Long> getAuthorId(String username)  {
+        String authorId = metadataCache.get(
+                "users/" + username,
+                () -> Arrays.stream(restClient.get(User[].class, "users", Map.of("username", username), authHeaders))
+                            .findFirst()
+                            .map(AbstractUser::getId)
+                            // unknown users are remembered too, for a shorter time
+                            .map(String::valueOf)
+                            .orElse(""));
+        if (authorId.isEmpty()) {
+            LOGGER.warn("user {} not found, none of its merge requests are exported", username);
+            return Optional.empty();
         }
+        return Optional.of(Long.parseLong(authorId));
+    }
 
+    public Stream<Discussion> getComments(MergeRequest mr) {
+        return frozenListIfMerged(
+                mr,
+                "projects/%d/merge_requests/%d/discussions".formatted(mr.getProjectId(), mr.getIid()),
+                Discussion.class,
+                () -> {
+                    try (Stream<Discussion> discussions = listingClient.getPaginated(
+                            Discussion[].class,
+                            "projects/%d/merge_requests/%d/discussions".formatted(mr.getProjectId(), mr.getIid()),
+                            Map.of("per_page", MAX_PAGE_SIZE),
+                            authHeaders)) {
+                        return discussions.toList();
+                    }
+                }).stream();
     }
-    public Stream<MergeRequest> getMergedMergeRequestsStream(Instant from, Instant to, Long userId) {
 
+    public Project getProject(Long projectId) {
+        String project = metadataCache.get(
+                "projects/" + projectId,
+                () -> gitlabJson.marshal(restClient.get(Project.class, "projects/" + projectId, Map.of(), authHeaders)));
         try {
-
-            return gitLabApi.getMergeRequestApi()
-                    .getMergeRequests(new MergeRequestFilter()
-                                              .withAuthorId(userId)
-                                              .withState(Constants.MergeRequestState.MERGED)
-                                              .withCreatedAfter(Date.from(from))
-                                              .withCreatedBefore(Date.from(to))
-                                              .withOrderBy(Constants.MergeRequestOrderBy.CREATED_AT)
-                                              .withSort(Constants.SortOrder.DESC)
-                                              .withScope(Constants.MergeRequestScope.ALL),
-                                      20)
-                    .stream()
-                    .map(mr -> {
-                        try {
-                            return gitLabApi.getMergeRequestApi().getMergeRequestChanges(mr.getProjectId(), mr.getIid());
-                        } catch (GitLabApiException e) {
-                            throw new RuntimeException(e);
-                        }
-                    });
-        } catch (GitLabApiException e) {
+            return gitlabJson.unmarshal(Project.class, project);
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public Optional<Long> getAuthorId(String username)  {
-        try {
-            return Optional.ofNullable(gitLabApi.getUserApi()
-                                 .getUser(username))
-                    .map(AbstractUser::getId);
+    /**
+     * Runs a query against the GraphQL API. GitLab answers a query it could not (fully) run with a 200 listing the
+     * errors, which are raised here.
+     */
+    public <T extends GraphQLResponse> T graphQL(String query, Map<String, Object> variables, Class<T> responseClass) {
+        T response = graphQLClient.post(responseClass, "graphql", new GraphQLRequest(query, variables), graphQLAuthHeaders);
+        if (response.errors() != null && !response.errors().isEmpty()) {
+            throw new RuntimeException("graphql query failed: " + response.errors()
+                                                                          .stream()
+                                                                          .map(GraphQLResponse.Error::message)
+                                                                          .toList());
+        }
+        return response;
+    }
 
-        } catch (GitLabApiException e) {
-            throw new RuntimeException(e);
+    public RequestScheduler getRequestScheduler() {
+        return requestScheduler;
+    }
+
+    public MetadataCache getMetadataCache() {
+        return metadataCache;
+    }
+
+    public void invalidateCache() {
+        if (responseCache != null) {
+            responseCache.invalidateAll();
         }
+        metadataCache.invalidateAll();
     }
 
-    public Stream<Discussion> getComments(MergeRequest mr) {
+    private <T> T frozenIfMerged(MergeRequest mr, String key, Class<T> cls, Supplier<T> fetch) {
+        if (responseCache == null || !isMerged(mr)) {
+            return fetch.get();
+        }
         try {
-            return gitLabApi.getDiscussionsApi().getMergeRequestDiscussionsPager(
-                    mr.getProjectId(), mr.getIid(),
-                    20
-            ).stream();
-        } catch (GitLabApiException e) {
+            Optional<ResponseCache.Entry> cached = responseCache.get(key);
+            if (cached.isPresent()) {
+                return gitlabJson.unmarshal(cls, cached.get().body());
+            }
+            T fetched = fetch.get();
+            responseCache.put(key, ResponseCache.Entry.frozen(gitlabJson.marshal(fetched)));
+            return fetched;
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public Project getProject(Long projectId) {
+    private <T> List<T> frozenListIfMerged(MergeRequest mr, String key, Class<T> cls, Supplier<List<T>> fetch) {
+        if (responseCache == null || !isMerged(mr)) {
+            return fetch.get();
+        }
         try {
-            return gitLabApi.getProjectApi().getProject(projectId);
-        } catch (GitLabApiException e) {
+            Optional<ResponseCache.Entry> cached = responseCache.get(key);
+            if (cached.isPresent()) {
+                return gitlabJson.unmarshalList(cls, cached.get().body());
+            }
+            List<T> fetched = fetch.get();
+            responseCache.put(key, ResponseCache.Entry.frozen(gitlabJson.marshal(fetched)));
+            return fetched;
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    private record GraphQLRequest(String query, Map<String, Object> variables) {
+
+    }
+
+    /**
+     * Merged merge requests can't change anymore, so whatever hangs off them can be cached for good.
+     */
+    private static boolean isMerged(MergeRequest mr) {
+        return Constants.MergeRequestState.MERGED.toString().equals(mr.getState()) || mr.getMergedAt() != null;
+    }
+
 }
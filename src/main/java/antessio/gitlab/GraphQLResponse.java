@@ -0,0 +1,16 @@
+package antessio.gitlab;
+
+import java.util.List;
+
+/**
+ * Body of a GitLab GraphQL response: the {@code data} shape is specific to each query, errors are common to all.
+ */
+public interface GraphQLResponse {
+
+    List<Error> errors();
+
+    record Error(String message) {
+
+    }
+
+}
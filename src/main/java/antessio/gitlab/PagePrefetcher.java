@@ -0,0 +1,124 @@
+package antessio.gitlab;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Runs a paged listing ahead of its consumer: the next page is fetched while the previous ones are processed, and
+ * pages are handed over in order. At most {@link #PAGES_BUFFERED} pages wait for the consumer, the listing blocks
+ * until it catches up. The listing stops at the next page once the prefetcher is closed.
+ */
+class PagePrefetcher<T> implements AutoCloseable {
+
+    @FunctionalInterface
+    interface Listing<T> {
+
+        /**
+         * Passes every page to {@code pages}, checking {@code closed} before fetching the next one.
+         */
+        void list(Consumer<List<T>> pages, BooleanSupplier closed);
+
+    }
+
+    private record Item<T>(List<T> page, RuntimeException failure) {
+
+        boolean isEnd() {
+            return page == null && failure == null;
+        }
+
+    }
+
+    static final int PAGES_BUFFERED = 2;
+    // how often a listing blocked on a full queue checks whether the prefetcher was closed meanwhile
+    private static final long CLOSED_CHECK_MILLIS = 100;
+
+    private final BlockingQueue<Item<T>> queue = new ArrayBlockingQueue<>(PAGES_BUFFERED);
+    private volatile boolean closed;
+
+    PagePrefetcher(ConcurrentFetcher fetcher, Listing<T> listing) {
+        fetcher.submit(() -> {
+            try {
+                listing.list(page -> put(new Item<>(page, null)), () -> closed);
+                put(new Item<>(null, null));
+            } catch (RuntimeException e) {
+                put(new Item<>(null, e));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * The items of all pages in order, blocking until the page they are in has been fetched; a failure of the
+     * listing is rethrown once the pages before it are consumed.
+     */
+    Stream<T> stream() {
+        Iterator<T> items = new Iterator<>() {
+
+            private Iterator<T> page = List.<T>of().iterator();
+            private boolean ended;
+
+            @Override
+            public boolean hasNext() {
+                while (!page.hasNext() && !ended) {
+                    Item<T> item = take();
+                    if (item.failure() != null) {
+                        throw item.failure();
+                    }
+                    ended = item.isEnd();
+                    page = ended ? page : item.page().iterator();
+                }
+                return page.hasNext();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(items, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Waits for room in the queue; once closed nobody takes items anymore, they are dropped.
+     */
+    private void put(Item<T> item) {
+        try {
+            boolean added = false;
+            while (!added && !closed) {
+                added = queue.offer(item, CLOSED_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Item<T> take() {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+}
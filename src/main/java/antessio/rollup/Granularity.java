@@ -0,0 +1,37 @@
+package antessio.rollup;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Size of the time buckets of a {@link Rollups}, in UTC: weeks start on Monday, months on their first day.
+ */
+public enum Granularity {
+    WEEK,
+    MONTH;
+
+    public Instant bucketStart(Instant instant) {
+        LocalDate day = instant.atZone(ZoneOffset.UTC).toLocalDate();
+        LocalDate start = switch (this) {
+            case WEEK -> day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH -> day.withDayOfMonth(1);
+        };
+        return start.atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    /**
+     * How a bucket is named in the report: the date of its monday for a week, {@code yyyy-MM} for a month.
+     */
+    public String label(Instant bucketStart) {
+        LocalDate start = bucketStart.atZone(ZoneOffset.UTC).toLocalDate();
+        return switch (this) {
+            case WEEK -> start.toString();
+            case MONTH -> start.format(DateTimeFormatter.ofPattern("yyyy-MM"));
+        };
+    }
+
+}
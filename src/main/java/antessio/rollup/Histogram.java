@@ -0,0 +1,48 @@
+package antessio.rollup;
+
+import java.util.Arrays;
+
+/**
+ * Counts of values falling under fixed upper bounds (inclusive), plus one count for the values above the last
+ * bound. Histograms with the same bounds merge by adding their counts.
+ */
+public class Histogram {
+
+    private long[] upperBounds;
+    private long[] counts;
+
+    private Histogram() {
+        // for deserialization
+    }
+
+    public Histogram(long... upperBounds) {
+        this.upperBounds = upperBounds.clone();
+        this.counts = new long[upperBounds.length + 1];
+    }
+
+    public void add(long value) {
+        int index = Arrays.binarySearch(upperBounds, value);
+        counts[index >= 0 ? index : -index - 1]++;
+    }
+
+    public void merge(Histogram other) {
+        if (!Arrays.equals(upperBounds, other.upperBounds)) {
+            throw new IllegalArgumentException("histograms with different bounds can't be merged");
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+    }
+
+    public long[] upperBounds() {
+        return upperBounds.clone();
+    }
+
+    /**
+     * One count per bound, the last one being the count of the values above every bound.
+     */
+    public long[] counts() {
+        return counts.clone();
+    }
+
+}
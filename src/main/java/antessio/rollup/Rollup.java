@@ -0,0 +1,131 @@
+package antessio.rollup;
+
+import java.time.Instant;
+
+import antessio.common.QuantileSketch;
+
+/**
+ * Aggregates of the merge requests created in a time bucket: counts, sums, histograms and quantile sketches only,
+ * so that rollups of adjacent buckets merge into the rollup of the larger window. Durations are in minutes.
+ */
+public class Rollup {
+
+    static final long[] DURATION_BOUNDS = {60, 4 * 60, 8 * 60, 24 * 60, 2 * 24 * 60, 3 * 24 * 60, 7 * 24 * 60, 14 * 24 * 60};
+    static final long[] NIT_COMMENTS_BOUNDS = {0, 1, 2, 3, 5, 10};
+
+    private Instant start;
+    private long mergeRequests;
+    private long durationSum;
+    private long durationCount;
+    private long timeToFirstCommentSum;
+    private long timeToFirstCommentCount;
+    private long nitComments;
+    private Histogram duration;
+    private Histogram timeToFirstComment;
+    private Histogram nitCommentsPerMergeRequest;
+    private QuantileSketch durationQuantiles;
+    private QuantileSketch timeToFirstCommentQuantiles;
+
+    private Rollup() {
+        // for deserialization
+    }
+
+    Rollup(Instant start) {
+        this.start = start;
+        this.duration = new Histogram(DURATION_BOUNDS);
+        this.timeToFirstComment = new Histogram(DURATION_BOUNDS);
+        this.nitCommentsPerMergeRequest = new Histogram(NIT_COMMENTS_BOUNDS);
+        this.durationQuantiles = new QuantileSketch();
+        this.timeToFirstCommentQuantiles = new QuantileSketch();
+    }
+
+    /**
+     * Adds a merge request; {@code duration} is {@code null} when it is not merged, {@code timeToFirstComment}
+     * when it has no comments.
+     */
+    void accept(Integer duration, Integer timeToFirstComment, int nitComments) {
+        mergeRequests++;
+        if (duration != null) {
+            durationSum += duration;
+            durationCount++;
+            this.duration.add(duration);
+            durationQuantiles.add(duration);
+        }
+        if (timeToFirstComment != null) {
+            timeToFirstCommentSum += timeToFirstComment;
+            timeToFirstCommentCount++;
+            this.timeToFirstComment.add(timeToFirstComment);
+            timeToFirstCommentQuantiles.add(timeToFirstComment);
+        }
+        this.nitComments += nitComments;
+        nitCommentsPerMergeRequest.add(nitComments);
+    }
+
+    void merge(Rollup other) {
+        mergeRequests += other.mergeRequests;
+        durationSum += other.durationSum;
+        durationCount += other.durationCount;
+        timeToFirstCommentSum += other.timeToFirstCommentSum;
+        timeToFirstCommentCount += other.timeToFirstCommentCount;
+        nitComments += other.nitComments;
+        duration.merge(other.duration);
+        timeToFirstComment.merge(other.timeToFirstComment);
+        nitCommentsPerMergeRequest.merge(other.nitCommentsPerMergeRequest);
+        durationQuantiles.merge(other.durationQuantiles);
+        timeToFirstCommentQuantiles.merge(other.timeToFirstCommentQuantiles);
+    }
+
+    Rollup copy(Instant start) {
+        Rollup copy = new Rollup(start);
+        copy.merge(this);
+        return copy;
+    }
+
+    /**
+     * Start of the bucket, or of the first bucket of a merged window.
+     */
+    public Instant start() {
+        return start;
+    }
+
+    public long mergeRequests() {
+        return mergeRequests;
+    }
+
+    public long averageDurationInMinutes() {
+        return durationCount == 0 ? 0 : durationSum / durationCount;
+    }
+
+    public long averageTimeToFirstCommentInMinutes() {
+        return timeToFirstCommentCount == 0 ? 0 : timeToFirstCommentSum / timeToFirstCommentCount;
+    }
+
+    public long nitComments() {
+        return nitComments;
+    }
+
+    public double averageNitComments() {
+        return mergeRequests == 0 ? 0d : (double) nitComments / mergeRequests;
+    }
+
+    public QuantileSketch durationQuantiles() {
+        return durationQuantiles;
+    }
+
+    public QuantileSketch timeToFirstCommentQuantiles() {
+        return timeToFirstCommentQuantiles;
+    }
+
+    public Histogram duration() {
+        return duration;
+    }
+
+    public Histogram timeToFirstComment() {
+        return timeToFirstComment;
+    }
+
+    public Histogram nitCommentsPerMergeRequest() {
+        return nitCommentsPerMergeRequest;
+    }
+
+}
@@ -0,0 +1,101 @@
+package antessio.rollup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import antessio.common.FileUtils;
+import antessio.common.JsonConverter;
+import antessio.common.ObjectMapperJsonConverter;
+
+/**
+ * Weekly and monthly {@link Rollup}s of the merge requests, by creation date. They are filled in the same pass as
+ * the other insights and kept once computed: the aggregates of any window made of whole buckets are obtained by
+ * merging its buckets, without going through the merge requests again.
+ */
+public class Rollups {
+
+    private record Stored(Map<Granularity, List<Rollup>> buckets) {
+
+    }
+
+    private final Map<Granularity, NavigableMap<Instant, Rollup>> buckets = new EnumMap<>(Granularity.class);
+
+    public Rollups() {
+        for (Granularity granularity : Granularity.values()) {
+            buckets.put(granularity, new TreeMap<>());
+        }
+    }
+
+    public void accept(Instant createdAt, Integer duration, Integer timeToFirstComment, int nitComments) {
+        for (Granularity granularity : Granularity.values()) {
+            buckets.get(granularity)
+                   .computeIfAbsent(granularity.bucketStart(createdAt), Rollup::new)
+                   .accept(duration, timeToFirstComment, nitComments);
+        }
+    }
+
+    /**
+     * Folds the buckets of {@code other} into these ones.
+     */
+    public Rollups combine(Rollups other) {
+        other.buckets.forEach((granularity, otherBuckets) -> otherBuckets.forEach(
+                (start, rollup) -> buckets.get(granularity).merge(start, rollup.copy(start), (current, added) -> {
+                    current.merge(added);
+                    return current;
+                })));
+        return this;
+    }
+
+    /**
+     * The buckets holding at least one merge request, oldest first.
+     */
+    public List<Rollup> buckets(Granularity granularity) {
+        return new ArrayList<>(buckets.get(granularity).values());
+    }
+
+    /**
+     * The aggregates of the merge requests in the buckets starting in {@code [from, to)}.
+     */
+    public Rollup window(Granularity granularity, Instant from, Instant to) {
+        Rollup window = new Rollup(from);
+        buckets.get(granularity)
+               .subMap(from, true, to, false)
+               .values()
+               .forEach(window::merge);
+        return window;
+    }
+
+    public void write(Path file) {
+        JsonConverter jsonConverter = new ObjectMapperJsonConverter();
+        Map<Granularity, List<Rollup>> stored = new EnumMap<>(Granularity.class);
+        buckets.forEach((granularity, rollups) -> stored.put(granularity, new ArrayList<>(rollups.values())));
+        Path partialFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.writeString(partialFile, jsonConverter.toJson(new Stored(stored)));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        FileUtils.moveReplacing(partialFile, file);
+    }
+
+    public static Rollups read(Path file) {
+        try {
+            Stored stored = new ObjectMapperJsonConverter().fromJson(Files.readString(file), Stored.class);
+            Rollups rollups = new Rollups();
+            stored.buckets().forEach((granularity, rollupsOfGranularity) -> rollupsOfGranularity.forEach(
+                    rollup -> rollups.buckets.get(granularity).put(rollup.start(), rollup)));
+            return rollups;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
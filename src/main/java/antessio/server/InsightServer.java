@@ -0,0 +1,278 @@
+package antessio.server;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import antessio.CodeReviewDataExporter;
+import antessio.CodeReviewInsightService;
+import antessio.MarkdownReport;
+import antessio.classification.CommentCategory;
+import antessio.common.JsonConverter;
+import antessio.common.ObjectMapperJsonConverter;
+import antessio.rollup.Granularity;
+import antessio.rollup.Rollup;
+
+/**
+ * Serves the insights over a local HTTP endpoint, keeping them in memory between requests. They are recomputed in
+ * the background every {@code refreshInterval} from a fresh {@code exporter}: only fetching the merge requests is
+ * incremental (an incremental crawl, or a reload of the backup), the insights are computed again over all of them,
+ * as the aggregates can't drop the merge requests that left the window. Queries keep being answered from the
+ * previous insights meanwhile, and when a refresh fails. Unless given another address, it only answers on the
+ * loopback interface.
+ * <ul>
+ *     <li>{@code GET /health}: when the insights were computed and on how many merge requests</li>
+ *     <li>{@code GET /insights}: averages, percentiles and comment categories</li>
+ *     <li>{@code GET /users/contributors|commenters|approvers}: the user rankings</li>
+ *     <li>{@code GET /merge-requests/hottest|longest|biggest}: the merge request rankings</li>
+ *     <li>{@code GET /trends?granularity=week|month[&from=...][&to=...]}: the rollup buckets starting in the window</li>
+ *     <li>{@code GET /report}: the markdown report</li>
+ * </ul>
+ */
+public class InsightServer implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InsightServer.class);
+
+    static {
+        // the JDK server writes headers and body apart: without TCP_NODELAY every small answer waits for a delayed ack
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private record Loaded(CodeReviewInsightService insights, Instant refreshedAt) {
+
+    }
+
+    public record Health(Instant refreshedAt, int mergeRequests) {
+
+    }
+
+    public record Summary(
+            int mergeRequests,
+            Instant mergeRequestsFrom,
+            int averageDurationInMinutes,
+            CodeReviewInsightService.Percentiles durationPercentiles,
+            int averageTimeToFirstCommentInMinutes,
+            CodeReviewInsightService.Percentiles timeToFirstCommentPercentiles,
+            double averageNitComments,
+            long timesFirstCommentWasNit,
+            Map<CommentCategory, Long> commentsByCategory,
+            Map<CommentCategory, Long> firstCommentsByCategory) {
+
+    }
+
+    public record Trend(
+            String bucket,
+            Instant start,
+            long mergeRequests,
+            long averageDurationInMinutes,
+            long p50DurationInMinutes,
+            long p90DurationInMinutes,
+            long averageTimeToFirstCommentInMinutes,
+            long p90TimeToFirstCommentInMinutes,
+            long nitComments,
+            double averageNitComments) {
+
+        static Trend of(Granularity granularity, Rollup rollup) {
+            return new Trend(
+                    granularity.label(rollup.start()),
+                    rollup.start(),
+                    rollup.mergeRequests(),
+                    rollup.averageDurationInMinutes(),
+                    rollup.durationQuantiles().quantile(0.5),
+                    rollup.durationQuantiles().quantile(0.9),
+                    rollup.averageTimeToFirstCommentInMinutes(),
+                    rollup.timeToFirstCommentQuantiles().quantile(0.9),
+                    rollup.nitComments(),
+                    rollup.averageNitComments());
+        }
+
+    }
+
+    private record Failure(String message) {
+
+    }
+
+    private final HttpServer server;
+    private final ExecutorService handlers = Executors.newVirtualThreadPerTaskExecutor();
+    private final Supplier<CodeReviewDataExporter> exporter;
+    private final Duration refreshInterval;
+    private final Clock clock;
+    private final JsonConverter jsonConverter = new ObjectMapperJsonConverter();
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(
+            runnable -> Thread.ofPlatform().name("insight-refresh").daemon().unstarted(runnable));
+    private volatile Loaded loaded;
+
+    public InsightServer(int port, Supplier<CodeReviewDataExporter> exporter, Duration refreshInterval, Clock clock) {
+        this(InetAddress.getLoopbackAddress(), port, exporter, refreshInterval, clock);
+    }
+
+    /**
+     * Answers on {@code address} only, e.g. the wildcard address to be reached from other hosts.
+     */
+    public InsightServer(InetAddress address, int port, Supplier<CodeReviewDataExporter> exporter, Duration refreshInterval, Clock clock) {
+        try {
+            this.server = HttpServer.create(new InetSocketAddress(address, port), 0);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        this.exporter = exporter;
+        this.refreshInterval = refreshInterval;
+        this.clock = clock;
+        server.setExecutor(handlers);
+        server.createContext("/", this::handle);
+    }
+
+    /**
+     * Starts answering right away, with {@code 503} until the first refresh completes.
+     */
+    public void start() {
+        server.start();
+        refresher.scheduleWithFixedDelay(this::refresh, 0, refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+        LOGGER.info("serving insights on {}, refreshed every {}", server.getAddress(), refreshInterval);
+    }
+
+    /**
+     * Recomputes the insights over every merge request of the exporter and swaps them in; on failure the previous
+     * ones are kept.
+     */
+    public void refresh() {
+        try {
+            Instant started = clock.instant();
+            CodeReviewInsightService insights = new CodeReviewInsightService(exporter.get());
+            loaded = new Loaded(insights, clock.instant());
+            LOGGER.info("insights refreshed on {} merge requests in {}", insights.mergeRequestsCount(), Duration.between(started, clock.instant()));
+        } catch (RuntimeException e) {
+            LOGGER.error("refresh failed, still serving the insights of {}", Optional.ofNullable(loaded).map(Loaded::refreshedAt).orElse(null), e);
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            try {
+                route(exchange);
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                respond(exchange, 400, new Failure(e.getMessage()));
+            } catch (RuntimeException e) {
+                LOGGER.error("failed to answer {}", exchange.getRequestURI(), e);
+                respond(exchange, 500, new Failure(e.getMessage()));
+            }
+        }
+    }
+
+    private void route(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("GET")) {
+            respond(exchange, 405, new Failure("only GET is supported"));
+            return;
+        }
+        Loaded current = loaded;
+        if (current == null) {
+            respond(exchange, 503, new Failure("insights are not computed yet"));
+            return;
+        }
+        CodeReviewInsightService insights = current.insights();
+        switch (exchange.getRequestURI().getPath()) {
+            case "/health" -> respond(exchange, 200, new Health(current.refreshedAt(), insights.mergeRequestsCount()));
+            case "/insights" -> respond(exchange, 200, summary(insights));
+            case "/users/contributors" -> respond(exchange, 200, insights.getTopContributors());
+            case "/users/commenters" -> respond(exchange, 200, insights.getTopCommenters());
+            case "/users/approvers" -> respond(exchange, 200, insights.getTopApprovers());
+            case "/merge-requests/hottest" -> respond(exchange, 200, insights.getHottestMrs());
+            case "/merge-requests/longest" -> respond(exchange, 200, insights.getLongestMrs());
+            case "/merge-requests/biggest" -> respond(exchange, 200, insights.getBiggestMRs());
+            case "/trends" -> respond(exchange, 200, trends(insights, query(exchange)));
+            case "/report" -> {
+                // rendered before answering, so that a failure can still be answered with an error
+                StringWriter report = new StringWriter();
+                new MarkdownReport(null, insights).writeReport(report);
+                byte[] markdown = report.toString().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/markdown; charset=utf-8");
+                exchange.sendResponseHeaders(200, markdown.length);
+                exchange.getResponseBody().write(markdown);
+            }
+            default -> respond(exchange, 404, new Failure("unknown path " + exchange.getRequestURI().getPath()));
+        }
+    }
+
+    private static Summary summary(CodeReviewInsightService insights) {
+        return new Summary(
+                insights.mergeRequestsCount(),
+                insights.mergeRequestsFrom(),
+                insights.getAverageMergeRequestsDurationInHours(),
+                insights.getMergeRequestsDurationPercentiles(),
+                insights.getAverageTimeToFirstCommentInHours(),
+                insights.getTimeToFirstCommentPercentiles(),
+                insights.getCountNitComments(),
+                insights.getTimesFirstCommentWasNit(),
+                insights.getCommentsByCategory(),
+                insights.getFirstCommentsByCategory());
+    }
+
+    private static List<Trend> trends(CodeReviewInsightService insights, Map<String, String> query) {
+        Granularity granularity = Granularity.valueOf(query.getOrDefault("granularity", "week").toUpperCase(Locale.ROOT));
+        Instant from = Optional.ofNullable(query.get("from")).map(Instant::parse).orElse(Instant.MIN);
+        Instant to = Optional.ofNullable(query.get("to")).map(Instant::parse).orElse(Instant.MAX);
+        return insights.getRollups()
+                       .buckets(granularity)
+                       .stream()
+                       .filter(rollup -> !rollup.start().isBefore(from) && rollup.start().isBefore(to))
+                       .map(rollup -> Trend.of(granularity, rollup))
+                       .toList();
+    }
+
+    private void respond(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] json = jsonConverter.toJson(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, json.length);
+        exchange.getResponseBody().write(json);
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        Optional.ofNullable(exchange.getRequestURI().getRawQuery())
+                .stream()
+                .flatMap(query -> List.of(query.split("&")).stream())
+                .filter(parameter -> !parameter.isEmpty())
+                .map(parameter -> parameter.split("=", 2))
+                .forEach(parameter -> parameters.put(
+                        URLDecoder.decode(parameter[0], StandardCharsets.UTF_8),
+                        parameter.length > 1 ? URLDecoder.decode(parameter[1], StandardCharsets.UTF_8) : ""));
+        return parameters;
+    }
+
+}
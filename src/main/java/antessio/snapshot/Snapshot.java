@@ -0,0 +1,266 @@
+package antessio.snapshot;
+
+import static antessio.snapshot.SnapshotFormat.NULL_INT;
+import static antessio.snapshot.SnapshotFormat.NULL_LONG;
+import static antessio.snapshot.SnapshotFormat.NULL_REF;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import antessio.CodeReviewDataExporter.Approval;
+import antessio.CodeReviewDataExporter.Comment;
+import antessio.CodeReviewDataExporter.LazyBody;
+import antessio.CodeReviewDataExporter.MergeRequest;
+import antessio.CodeReviewDataExporter.Project;
+import antessio.classification.CommentCategory;
+import antessio.snapshot.SnapshotFormat.Section;
+
+/**
+ * Memory-mapped, read-only view of a snapshot written by {@link SnapshotWriter}. Records are decoded on access;
+ * dictionary strings are decoded once and shared by every record referencing them. With lazy comment bodies, comments
+ * only point into the mapped blob and their text is decoded when asked for.
+ */
+public class Snapshot {
+
+    private static final int MISSING = -1;
+    private static final Set<CommentCategory>[] CATEGORIES_BY_MASK = categoriesByMask();
+
+    private final ByteBuffer buffer;
+    private final boolean lazyCommentBodies;
+    private final int mergeRequestCount;
+    private final int[] offsets;
+    private final String[] dictionary;
+    private final Project[] projects;
+
+    private Snapshot(ByteBuffer buffer, boolean lazyCommentBodies) {
+        this.buffer = buffer;
+        this.lazyCommentBodies = lazyCommentBodies;
+        if (buffer.getInt(0) != SnapshotFormat.MAGIC) {
+            throw new IllegalArgumentException("not a snapshot");
+        }
+        if (buffer.getInt(Integer.BYTES) != SnapshotFormat.VERSION) {
+            throw new IllegalArgumentException("unsupported snapshot version " + buffer.getInt(Integer.BYTES));
+        }
+        this.mergeRequestCount = buffer.getInt(2 * Integer.BYTES);
+        int sections = buffer.getInt(6 * Integer.BYTES);
+        this.offsets = new int[Section.values().length];
+        for (Section section : Section.values()) {
+            offsets[section.ordinal()] = section.ordinal() < sections
+                    ? Math.toIntExact(buffer.getLong(Integer.BYTES * SnapshotFormat.HEADER_INTS + Long.BYTES * section.ordinal()))
+                    : MISSING;
+        }
+        this.dictionary = new String[intAt(Section.DICTIONARY_ENDS, 0)];
+        this.projects = new Project[buffer.getInt(5 * Integer.BYTES)];
+    }
+
+    public static Snapshot open(Path file) {
+        return open(file, false);
+    }
+
+    public static Snapshot open(Path file, boolean lazyCommentBodies) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > SnapshotFormat.MAX_SIZE) {
+                throw new IllegalArgumentException("snapshot too big to be mapped: " + channel.size() + " bytes");
+            }
+            return new Snapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), lazyCommentBodies);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public int size() {
+        return mergeRequestCount;
+    }
+
+    public Stream<MergeRequest> stream() {
+        return IntStream.range(0, mergeRequestCount).mapToObj(this::mergeRequest);
+    }
+
+    public MergeRequest mergeRequest(int index) {
+        int approvalsStart = index == 0 ? 0 : intAt(Section.MR_APPROVALS_END, index - 1);
+        int approvalsEnd = intAt(Section.MR_APPROVALS_END, index);
+        List<Approval> approvals = new ArrayList<>(approvalsEnd - approvalsStart);
+        for (int i = approvalsStart; i < approvalsEnd; i++) {
+            approvals.add(new Approval(dictionaryString(intAt(Section.APPROVAL_USER, i))));
+        }
+        int commentsStart = index == 0 ? 0 : intAt(Section.MR_COMMENTS_END, index - 1);
+        int commentsEnd = intAt(Section.MR_COMMENTS_END, index);
+        List<Comment> comments = new ArrayList<>(commentsEnd - commentsStart);
+        for (int i = commentsStart; i < commentsEnd; i++) {
+            comments.add(new Comment(
+                    dictionaryString(intAt(Section.COMMENT_AUTHOR, i)),
+                    lazyCommentBodies ? null : body(i),
+                    instant(longAt(Section.COMMENT_CREATED_AT, i)),
+                    categories(i),
+                    lazyCommentBodies ? lazyBody(i) : null));
+        }
+        int project = intAt(Section.MR_PROJECT, index);
+        return new MergeRequest(
+                dictionaryString(intAt(Section.MR_ID, index)),
+                dictionaryString(intAt(Section.MR_TITLE, index)),
+                dictionaryString(intAt(Section.MR_WEB_URL, index)),
+                dictionaryString(intAt(Section.MR_AUTHOR, index)),
+                instant(longAt(Section.MR_CREATED_AT, index)),
+                instant(longAt(Section.MR_MERGED_AT, index)),
+                nullableInt(Section.MR_CHANGES, index),
+                approvals,
+                comments,
+                project == NULL_REF ? null : project(project),
+                nullableInt(Section.MR_LINES_ADDED, index),
+                nullableInt(Section.MR_LINES_REMOVED, index));
+    }
+
+    private Project project(int index) {
+        Project project = projects[index];
+        if (project == null) {
+            project = new Project(
+                    dictionaryString(intAt(Section.PROJECTS, 3 * index)),
+                    dictionaryString(intAt(Section.PROJECTS, 3 * index + 1)),
+                    dictionaryString(intAt(Section.PROJECTS, 3 * index + 2)));
+            projects[index] = project;
+        }
+        return project;
+    }
+
+    private String dictionaryString(int ref) {
+        if (ref == NULL_REF) {
+            return null;
+        }
+        String value = dictionary[ref];
+        if (value == null) {
+            // the first int of the section is the string count
+            int start = ref == 0 ? 0 : intAt(Section.DICTIONARY_ENDS, ref);
+            int end = intAt(Section.DICTIONARY_ENDS, ref + 1);
+            value = string(Section.DICTIONARY_BYTES, start, end);
+            dictionary[ref] = value;
+        }
+        return value;
+    }
+
+    private String body(int comment) {
+        int end = intAt(Section.COMMENT_BODY_ENDS, comment);
+        if (end < 0) {
+            return null;
+        }
+        int start = comment == 0 ? 0 : bodyEnd(comment - 1);
+        return string(Section.COMMENT_BODY_BYTES, start, end);
+    }
+
+    private Set<CommentCategory> categories(int comment) {
+        return offsets[Section.COMMENT_CATEGORIES.ordinal()] == MISSING
+                ? null
+                : CATEGORIES_BY_MASK[intAt(Section.COMMENT_CATEGORIES, comment)];
+    }
+
+    private LazyBody lazyBody(int comment) {
+        int end = intAt(Section.COMMENT_BODY_ENDS, comment);
+        if (end < 0) {
+            return null;
+        }
+        int start = comment == 0 ? 0 : bodyEnd(comment - 1);
+        return new MappedBody(buffer, offsets[Section.COMMENT_BODY_BYTES.ordinal()] + start, end - start);
+    }
+
+    private int bodyEnd(int comment) {
+        int end = intAt(Section.COMMENT_BODY_ENDS, comment);
+        return end < 0 ? -end - 1 : end;
+    }
+
+    private String string(Section section, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buffer.get(offsets[section.ordinal()] + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int intAt(Section section, int index) {
+        return buffer.getInt(offsets[section.ordinal()] + Integer.BYTES * index);
+    }
+
+    private Integer nullableInt(Section section, int index) {
+        if (offsets[section.ordinal()] == MISSING) {
+            return null;
+        }
+        int value = intAt(section, index);
+        return value == NULL_INT ? null : value;
+    }
+
+    private long longAt(Section section, int index) {
+        return buffer.getLong(offsets[section.ordinal()] + Long.BYTES * index);
+    }
+
+    private static Instant instant(long epochMillis) {
+        return epochMillis == NULL_LONG ? null : Instant.ofEpochMilli(epochMillis);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<CommentCategory>[] categoriesByMask() {
+        // a handful of combinations, shared by all comments instead of one set each
+        Set<CommentCategory>[] categories = new Set[1 << CommentCategory.values().length];
+        for (int mask = 0; mask < categories.length; mask++) {
+            categories[mask] = CommentCategory.fromMask(mask);
+        }
+        return categories;
+    }
+
+    /**
+     * A body left in the mapped blob, which is also its raw view: one char per utf-8 byte.
+     */
+    private static final class MappedBody implements LazyBody, CharSequence {
+
+        private final ByteBuffer buffer;
+        private final int offset;
+        private final int length;
+
+        private MappedBody(ByteBuffer buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public String text() {
+            byte[] bytes = new byte[length];
+            buffer.get(offset, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public CharSequence raw() {
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (buffer.get(offset + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new MappedBody(buffer, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            byte[] bytes = new byte[length];
+            buffer.get(offset, bytes);
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+
+    }
+
+}
@@ -0,0 +1,60 @@
+package antessio.snapshot;
+
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import antessio.CodeReviewDataExporter.MergeRequest;
+import antessio.common.FileUtils;
+import antessio.common.JsonArrayWriter;
+import antessio.common.JsonConverter;
+import antessio.common.ObjectMapperJsonConverter;
+
+/**
+ * Converts between the json backup and the snapshot format, in both directions:
+ * {@code SnapshotConverter toSnapshot|toJson <source> <target>}.
+ */
+public final class SnapshotConverter {
+
+    private SnapshotConverter() {
+
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 3) {
+            throw new IllegalArgumentException("usage: SnapshotConverter toSnapshot|toJson <source> <target>");
+        }
+        switch (args[0]) {
+            case "toSnapshot" -> jsonToSnapshot(Path.of(args[1]), Path.of(args[2]));
+            case "toJson" -> snapshotToJson(Path.of(args[1]), Path.of(args[2]));
+            default -> throw new IllegalArgumentException("unknown conversion " + args[0]);
+        }
+    }
+
+    public static void jsonToSnapshot(Path json, Path snapshot) {
+        JsonConverter jsonConverter = new ObjectMapperJsonConverter();
+        try (Stream<MergeRequest> mergeRequests = jsonConverter.fromJsonArray(json, MergeRequest.class)) {
+            SnapshotWriter.write(snapshot, mergeRequests);
+        }
+    }
+
+    /**
+     * Converts {@code json} unless its snapshot would be larger than {@code maxSize} bytes, or than a snapshot can
+     * be: {@code false} is returned then, without writing anything.
+     */
+    public static boolean jsonToSnapshot(Path json, Path snapshot, long maxSize) {
+        JsonConverter jsonConverter = new ObjectMapperJsonConverter();
+        try (Stream<MergeRequest> mergeRequests = jsonConverter.fromJsonArray(json, MergeRequest.class)) {
+            return SnapshotWriter.write(snapshot, mergeRequests, maxSize);
+        }
+    }
+
+    public static void snapshotToJson(Path snapshot, Path json) {
+        JsonConverter jsonConverter = new ObjectMapperJsonConverter();
+        Path partialJson = json.resolveSibling(json.getFileName() + ".tmp");
+        try (JsonArrayWriter<MergeRequest> writer = jsonConverter.toJsonArray(partialJson)) {
+            Snapshot.open(snapshot).stream().forEach(writer::append);
+        }
+        FileUtils.moveReplacing(partialJson, json);
+    }
+
+}
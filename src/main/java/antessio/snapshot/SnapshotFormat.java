@@ -0,0 +1,65 @@
+package antessio.snapshot;
+
+/**
+ * Layout of a snapshot file, all numbers big endian:
+ * <pre>
+ * magic, version, merge requests, approvals, comments, projects, sections  (int each)
+ * offset of every section from the start of the file                       (long each)
+ * sections, in the order of {@link Section}
+ * </pre>
+ * Strings shared between records (usernames, project fields, ids, titles, urls) live once in a dictionary and are
+ * referenced by index, {@code -1} standing for {@code null}. Comment bodies live in a blob of their own. Timestamps
+ * are epoch millis. Approvals and comments of the merge request {@code i} are the ones between the end of the merge
+ * request {@code i - 1} and its own end.
+ * <p>
+ * Sections are only ever appended: a reader finds the number of sections in the header and treats the ones it
+ * does not find as missing.
+ * <p>
+ * Offsets are longs, but a snapshot is at most {@link #MAX_SIZE} bytes: it is read through a single mapped buffer,
+ * and positions inside the dictionary and the comment blob are ints. The writer refuses to go past it.
+ */
+final class SnapshotFormat {
+
+    static final int MAGIC = 0x43524953;
+    static final int VERSION = 1;
+    static final int HEADER_INTS = 7;
+    static final long MAX_SIZE = Integer.MAX_VALUE;
+
+    static final int NULL_REF = -1;
+    static final int NULL_INT = Integer.MIN_VALUE;
+    static final long NULL_LONG = Long.MIN_VALUE;
+
+    enum Section {
+        /** int per dictionary string: the end of its utf-8 bytes, preceded by the string count */
+        DICTIONARY_ENDS,
+        DICTIONARY_BYTES,
+        /** dictionary refs of id, name and url of each project */
+        PROJECTS,
+        MR_ID,
+        MR_TITLE,
+        MR_WEB_URL,
+        MR_AUTHOR,
+        MR_CREATED_AT,
+        MR_MERGED_AT,
+        MR_CHANGES,
+        /** project index, -1 for none */
+        MR_PROJECT,
+        MR_APPROVALS_END,
+        MR_COMMENTS_END,
+        APPROVAL_USER,
+        COMMENT_AUTHOR,
+        COMMENT_CREATED_AT,
+        /** int per comment: the end of its body in the blob, {@code -end - 1} when the body is null */
+        COMMENT_BODY_ENDS,
+        COMMENT_BODY_BYTES,
+        /** category mask of each comment; missing in snapshots written before comments were classified */
+        COMMENT_CATEGORIES,
+        MR_LINES_ADDED,
+        MR_LINES_REMOVED
+    }
+
+    private SnapshotFormat() {
+
+    }
+
+}
@@ -0,0 +1,267 @@
+package antessio.snapshot;
+
+import static antessio.snapshot.SnapshotFormat.NULL_INT;
+import static antessio.snapshot.SnapshotFormat.NULL_LONG;
+import static antessio.snapshot.SnapshotFormat.NULL_REF;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import antessio.CodeReviewDataExporter.Approval;
+import antessio.CodeReviewDataExporter.Comment;
+import antessio.CodeReviewDataExporter.MergeRequest;
+import antessio.CodeReviewDataExporter.Project;
+import antessio.classification.CommentCategory;
+import antessio.classification.CommentClassifier;
+import antessio.common.FileUtils;
+import antessio.snapshot.SnapshotFormat.Section;
+
+/**
+ * Writes merge requests in the columnar layout described by {@link SnapshotFormat}. Each column is spilled to a file
+ * of its own while merge requests are added, then the columns are copied one after the other behind the header, so
+ * the snapshot is never held in memory; only the dictionary index is.
+ */
+public final class SnapshotWriter implements AutoCloseable {
+
+    private final CommentClassifier classifier = CommentClassifier.defaults();
+    private final Path columnDirectory;
+    private final Map<Section, Column> columns = new EnumMap<>(Section.class);
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private final Map<Project, Integer> projects = new HashMap<>();
+    private int dictionaryEnd;
+    private int bodyEnd;
+    private int mergeRequestCount;
+    private int approvalCount;
+    private int commentCount;
+
+    private SnapshotWriter(Path columnDirectory) throws IOException {
+        this.columnDirectory = columnDirectory;
+        for (Section section : Section.values()) {
+            columns.put(section, new Column(columnDirectory.resolve(section.name())));
+        }
+    }
+
+    /**
+     * Writes {@code mergeRequests} to {@code file}, replacing it only once the snapshot is complete. The columns are
+     * spilled next to it meanwhile.
+     *
+     * @throws IllegalStateException when the snapshot would be larger than {@link SnapshotFormat#MAX_SIZE}
+     */
+    public static void write(Path file, Stream<MergeRequest> mergeRequests) {
+        if (!write(file, mergeRequests, SnapshotFormat.MAX_SIZE)) {
+            throw new IllegalStateException("snapshot %s would exceed the limit of %d bytes".formatted(file, SnapshotFormat.MAX_SIZE));
+        }
+    }
+
+    /**
+     * Writes {@code mergeRequests} to {@code file} unless the snapshot would be larger than {@code maxSize} bytes,
+     * itself capped to {@link SnapshotFormat#MAX_SIZE}: {@code file} is then left as it was and {@code false}
+     * returned.
+     */
+    public static boolean write(Path file, Stream<MergeRequest> mergeRequests, long maxSize) {
+        Path partialFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (SnapshotWriter writer = new SnapshotWriter(
+                Files.createTempDirectory(file.toAbsolutePath().getParent(), file.getFileName() + ".columns"))) {
+            mergeRequests.forEach(writer::add);
+            if (!writer.writeTo(partialFile, Math.min(maxSize, SnapshotFormat.MAX_SIZE))) {
+                return false;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        FileUtils.moveReplacing(partialFile, file);
+        return true;
+    }
+
+    private void add(MergeRequest mr) {
+        writeInt(Section.MR_ID, ref(mr.id()));
+        writeInt(Section.MR_TITLE, ref(mr.title()));
+        writeInt(Section.MR_WEB_URL, ref(mr.webUrl()));
+        writeInt(Section.MR_AUTHOR, ref(mr.author()));
+        writeLong(Section.MR_CREATED_AT, epochMillis(mr.createdAt()));
+        writeLong(Section.MR_MERGED_AT, epochMillis(mr.mergedAt()));
+        writeInt(Section.MR_CHANGES, mr.changes() == null ? NULL_INT : mr.changes());
+        writeInt(Section.MR_PROJECT, mr.project() == null ? NULL_REF : projects.computeIfAbsent(mr.project(), this::addProject));
+        writeInt(Section.MR_LINES_ADDED, mr.linesAdded() == null ? NULL_INT : mr.linesAdded());
+        writeInt(Section.MR_LINES_REMOVED, mr.linesRemoved() == null ? NULL_INT : mr.linesRemoved());
+        if (mr.approvals() != null) {
+            for (Approval approval : mr.approvals()) {
+                writeInt(Section.APPROVAL_USER, ref(approval.username()));
+                approvalCount++;
+            }
+        }
+        if (mr.comments() != null) {
+            for (Comment comment : mr.comments()) {
+                writeInt(Section.COMMENT_AUTHOR, ref(comment.author()));
+                writeLong(Section.COMMENT_CREATED_AT, epochMillis(comment.createdAt()));
+                if (comment.body() == null) {
+                    writeInt(Section.COMMENT_BODY_ENDS, -bodyEnd - 1);
+                } else {
+                    bodyEnd = Math.addExact(bodyEnd, writeBytes(Section.COMMENT_BODY_BYTES, comment.body()));
+                    writeInt(Section.COMMENT_BODY_ENDS, bodyEnd);
+                }
+                writeInt(Section.COMMENT_CATEGORIES, CommentCategory.mask(classifier.categoriesOf(comment)));
+                commentCount++;
+            }
+        }
+        writeInt(Section.MR_APPROVALS_END, approvalCount);
+        writeInt(Section.MR_COMMENTS_END, commentCount);
+        mergeRequestCount++;
+    }
+
+    private int addProject(Project project) {
+        writeInt(Section.PROJECTS, ref(project.id()));
+        writeInt(Section.PROJECTS, ref(project.name()));
+        writeInt(Section.PROJECTS, ref(project.url()));
+        return projects.size();
+    }
+
+    private int ref(String value) {
+        if (value == null) {
+            return NULL_REF;
+        }
+        return dictionary.computeIfAbsent(value, v -> {
+            dictionaryEnd = Math.addExact(dictionaryEnd, writeBytes(Section.DICTIONARY_BYTES, v));
+            writeInt(Section.DICTIONARY_ENDS, dictionaryEnd);
+            return dictionary.size();
+        });
+    }
+
+    private boolean writeTo(Path file, long maxSize) throws IOException {
+        long offset = Integer.BYTES * SnapshotFormat.HEADER_INTS + (long) Long.BYTES * Section.values().length;
+        ByteBuffer header = ByteBuffer.allocate(Math.toIntExact(offset));
+        header.putInt(SnapshotFormat.MAGIC);
+        header.putInt(SnapshotFormat.VERSION);
+        header.putInt(mergeRequestCount);
+        header.putInt(approvalCount);
+        header.putInt(commentCount);
+        header.putInt(projects.size());
+        header.putInt(Section.values().length);
+        for (Section section : Section.values()) {
+            header.putLong(offset);
+            offset += sizeOf(section);
+        }
+        if (offset > maxSize) {
+            return false;
+        }
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(out, header.flip());
+            for (Section section : Section.values()) {
+                if (section == Section.DICTIONARY_ENDS) {
+                    writeFully(out, ByteBuffer.allocate(Integer.BYTES).putInt(0, dictionary.size()));
+                }
+                columns.get(section).transferTo(out);
+            }
+        }
+        return true;
+    }
+
+    private long sizeOf(Section section) {
+        long size = columns.get(section).size;
+        return section == Section.DICTIONARY_ENDS ? size + Integer.BYTES : size;
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private void writeInt(Section section, int value) {
+        try {
+            columns.get(section).writeInt(value);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void writeLong(Section section, long value) {
+        try {
+            columns.get(section).writeLong(value);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private int writeBytes(Section section, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        try {
+            columns.get(section).write(bytes);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return bytes.length;
+    }
+
+    private static long epochMillis(Instant instant) {
+        return instant == null ? NULL_LONG : instant.toEpochMilli();
+    }
+
+    /**
+     * Removes the spilled columns.
+     */
+    @Override
+    public void close() throws IOException {
+        for (Column column : columns.values()) {
+            column.close();
+        }
+        Files.deleteIfExists(columnDirectory);
+    }
+
+    private static class Column implements AutoCloseable {
+
+        private final Path file;
+        private final DataOutputStream data;
+        // DataOutputStream counts in an int
+        private long size;
+
+        private Column(Path file) throws IOException {
+            this.file = file;
+            this.data = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+        }
+
+        private void writeInt(int value) throws IOException {
+            data.writeInt(value);
+            size += Integer.BYTES;
+        }
+
+        private void writeLong(long value) throws IOException {
+            data.writeLong(value);
+            size += Long.BYTES;
+        }
+
+        private void write(byte[] bytes) throws IOException {
+            data.write(bytes);
+            size += bytes.length;
+        }
+
+        private void transferTo(FileChannel out) throws IOException {
+            data.flush();
+            try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                for (long position = 0; position < size; ) {
+                    position += in.transferTo(position, size - position, out);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            data.close();
+            Files.deleteIfExists(file);
+        }
+
+    }
+
+}
@@ -0,0 +1,38 @@
+package antessio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+class CodeReviewDataExporterTest {
+
+    private static final Instant FROM = Instant.parse("2024-01-01T00:00:00Z");
+    private static final Instant TO = Instant.parse("2024-02-01T00:00:00Z");
+
+    @Test
+    void keepsTheMergeRequestsCreatedInTheWindow() {
+        CodeReviewDataExporter backup = () -> List.of(
+                mergeRequest("before", FROM.minusMillis(1)),
+                mergeRequest("first", FROM),
+                mergeRequest("last", TO.minusMillis(1)),
+                mergeRequest("after", TO));
+
+        CodeReviewDataExporter window = backup.within(FROM, TO);
+
+        assertEquals(List.of("first", "last"), window.getMergeRequests().stream().map(CodeReviewDataExporter.MergeRequest::id).toList());
+        try (Stream<CodeReviewDataExporter.MergeRequest> mergeRequests = window.streamMergeRequests()) {
+            assertEquals(List.of("first", "last"), mergeRequests.map(CodeReviewDataExporter.MergeRequest::id).toList());
+        }
+    }
+
+    private static CodeReviewDataExporter.MergeRequest mergeRequest(String id, Instant createdAt) {
+        return new CodeReviewDataExporter.MergeRequest(
+                id, "title", "url", "alice", createdAt, createdAt.plus(Duration.ofHours(1)), 1, List.of(), List.of(), null);
+    }
+
+}
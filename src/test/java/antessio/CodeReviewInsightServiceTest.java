@@ -0,0 +1,130 @@
+package antessio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.DoubleStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import antessio.rollup.Granularity;
+import antessio.rollup.Rollup;
+
+class CodeReviewInsightServiceTest {
+
+    private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+    private static final double[] QUANTILES = {0, 0.5, 0.9, 0.99, 1};
+    private static final String[] BODIES = {"looks good", "nit: naming", "why not a map?", "blocking: this leaks", "nits: spacing"};
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @AfterEach
+    void shutdownPool() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void forkJoinMatchesTheSequentialComputation() {
+        // several slices of the fork/join task, with few distinct values so that rankings tie across slices
+        List<CodeReviewDataExporter.MergeRequest> mergeRequests = mergeRequests(new Random(3), 3_000);
+
+        for (int topK : new int[]{1, CodeReviewInsightService.DEFAULT_TOP_K, 5_000}) {
+            CodeReviewInsightService sequential = new CodeReviewInsightService(mergeRequests.stream(), topK);
+            CodeReviewInsightService forkJoin = new CodeReviewInsightService(mergeRequests, pool, topK);
+
+            assertSameInsights(sequential, forkJoin);
+        }
+    }
+
+    @Test
+    void forkJoinMatchesTheSequentialComputationOnFewMergeRequests() {
+        List<CodeReviewDataExporter.MergeRequest> mergeRequests = mergeRequests(new Random(5), 3);
+
+        assertSameInsights(new CodeReviewInsightService(mergeRequests.stream()), new CodeReviewInsightService(mergeRequests, pool));
+        assertSameInsights(new CodeReviewInsightService(Stream.empty()), new CodeReviewInsightService(List.of(), pool));
+    }
+
+    private static void assertSameInsights(CodeReviewInsightService expected, CodeReviewInsightService actual) {
+        assertEquals(expected.getTopContributors(), actual.getTopContributors());
+        assertEquals(expected.getTopCommenters(), actual.getTopCommenters());
+        assertEquals(expected.getTopApprovers(), actual.getTopApprovers());
+        assertEquals(expected.getTopK(), actual.getTopK());
+        assertEquals(expected.getHottestMrs(), actual.getHottestMrs());
+        assertEquals(expected.getLongestMrs(), actual.getLongestMrs());
+        assertEquals(expected.getBiggestMRs(), actual.getBiggestMRs());
+        assertEquals(expected.getAverageMergeRequestsDurationInHours(), actual.getAverageMergeRequestsDurationInHours());
+        assertEquals(expected.getAverageTimeToFirstCommentInHours(), actual.getAverageTimeToFirstCommentInHours());
+        assertEquals(expected.getMergeRequestsDurationPercentiles(), actual.getMergeRequestsDurationPercentiles());
+        assertEquals(expected.getTimeToFirstCommentPercentiles(), actual.getTimeToFirstCommentPercentiles());
+        assertEquals(expected.getCountNitComments(), actual.getCountNitComments());
+        assertEquals(expected.getTimesFirstCommentWasNit(), actual.getTimesFirstCommentWasNit());
+        assertEquals(expected.getCommentsByCategory(), actual.getCommentsByCategory());
+        assertEquals(expected.getFirstCommentsByCategory(), actual.getFirstCommentsByCategory());
+        assertEquals(expected.mergeRequestsCount(), actual.mergeRequestsCount());
+        assertEquals(expected.mergeRequestsFrom(), actual.mergeRequestsFrom());
+        for (Granularity granularity : Granularity.values()) {
+            assertEquals(expected.getRollups().buckets(granularity).stream().map(CodeReviewInsightServiceTest::valuesOf).toList(),
+                         actual.getRollups().buckets(granularity).stream().map(CodeReviewInsightServiceTest::valuesOf).toList());
+        }
+    }
+
+    /**
+     * What a rollup tells, leaving out how its sketches are sized.
+     */
+    private static List<Object> valuesOf(Rollup rollup) {
+        return List.of(
+                rollup.start(),
+                rollup.mergeRequests(),
+                rollup.averageDurationInMinutes(),
+                rollup.averageTimeToFirstCommentInMinutes(),
+                rollup.nitComments(),
+                Arrays.toString(rollup.duration().counts()),
+                Arrays.toString(rollup.timeToFirstComment().counts()),
+                Arrays.toString(rollup.nitCommentsPerMergeRequest().counts()),
+                DoubleStream.of(QUANTILES).mapToLong(rollup.durationQuantiles()::quantile).boxed().toList(),
+                DoubleStream.of(QUANTILES).mapToLong(rollup.timeToFirstCommentQuantiles()::quantile).boxed().toList());
+    }
+
+    private static List<CodeReviewDataExporter.MergeRequest> mergeRequests(Random random, int count) {
+        List<CodeReviewDataExporter.MergeRequest> mergeRequests = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Instant createdAt = START.plus(Duration.ofHours(random.nextInt(24 * 120)));
+            // open merge requests have no merge date
+            Instant mergedAt = random.nextInt(5) == 0 ? null : createdAt.plus(Duration.ofHours(random.nextInt(4) * 24L));
+            List<CodeReviewDataExporter.Comment> comments = new ArrayList<>();
+            for (int c = random.nextInt(6); c > 0; c--) {
+                // not sorted by date, and sometimes at the same minute
+                comments.add(new CodeReviewDataExporter.Comment(
+                        "user" + random.nextInt(30),
+                        BODIES[random.nextInt(BODIES.length)],
+                        createdAt.plus(Duration.ofMinutes(random.nextInt(4) * 30L))));
+            }
+            List<CodeReviewDataExporter.Approval> approvals = random.nextBoolean()
+                    ? List.of(new CodeReviewDataExporter.Approval("user" + random.nextInt(30)))
+                    : List.of();
+            mergeRequests.add(new CodeReviewDataExporter.MergeRequest(
+                    String.valueOf(i),
+                    "title " + i,
+                    "https://gitlab.example.com/mr/" + i,
+                    "user" + random.nextInt(30),
+                    createdAt,
+                    mergedAt,
+                    random.nextInt(4),
+                    approvals,
+                    comments,
+                    null,
+                    random.nextInt(3),
+                    random.nextInt(3)));
+        }
+        return mergeRequests;
+    }
+
+}
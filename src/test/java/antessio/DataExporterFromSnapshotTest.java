@@ -0,0 +1,80 @@
+package antessio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import antessio.common.JsonArrayWriter;
+import antessio.common.ObjectMapperJsonConverter;
+
+class DataExporterFromSnapshotTest {
+
+    private static final Instant CREATED_AT = Instant.parse("2024-01-02T10:15:30Z");
+    private static final List<CodeReviewDataExporter.MergeRequest> MERGE_REQUESTS = List.of(
+            new CodeReviewDataExporter.MergeRequest(
+                    "1", "Add the exporter", "https://gitlab.example.com/backend/1", "alice",
+                    CREATED_AT, CREATED_AT.plusSeconds(3600), 4,
+                    List.of(new CodeReviewDataExporter.Approval("bob")),
+                    List.of(new CodeReviewDataExporter.Comment("bob", "nit: rename this", CREATED_AT.plusSeconds(60))),
+                    null, 10, 2));
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void convertsTheBackupToASnapshot() {
+        File backup = writeBackup();
+        File snapshot = directory.resolve("merge_requests.snapshot").toFile();
+
+        CodeReviewDataExporter exporter = DataExporterFromSnapshot.ofBackup(backup, snapshot, false);
+
+        assertInstanceOf(DataExporterFromSnapshot.class, exporter);
+        assertTrue(snapshot.exists());
+        assertEquals(MERGE_REQUESTS, exporter.getMergeRequests());
+    }
+
+    @Test
+    void readsTheJsonWhenTheSnapshotWouldBeTooLarge() throws IOException {
+        File backup = writeBackup();
+        File snapshot = directory.resolve("merge_requests.snapshot").toFile();
+
+        CodeReviewDataExporter exporter = DataExporterFromSnapshot.ofBackup(backup, snapshot, false, 64);
+
+        assertInstanceOf(DataExporterFromBackup.class, exporter);
+        assertEquals(MERGE_REQUESTS, exporter.getMergeRequests());
+        assertFalse(snapshot.exists());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(List.of(backup.toPath()), files.toList());
+        }
+    }
+
+    @Test
+    void needsABackupOrASnapshot() {
+        File backup = directory.resolve("merge_requests.json").toFile();
+        File snapshot = directory.resolve("merge_requests.snapshot").toFile();
+
+        assertThrows(IllegalArgumentException.class, () -> DataExporterFromSnapshot.ofBackup(backup, snapshot, false));
+    }
+
+    private File writeBackup() {
+        Path backup = directory.resolve("merge_requests.json");
+        try (JsonArrayWriter<CodeReviewDataExporter.MergeRequest> writer = new ObjectMapperJsonConverter().toJsonArray(backup)) {
+            MERGE_REQUESTS.forEach(writer::append);
+        }
+        return backup.toFile();
+    }
+
+}
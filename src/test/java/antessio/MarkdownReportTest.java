@@ -0,0 +1,125 @@
+package antessio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import antessio.common.FileUtils;
+
+class MarkdownReportTest {
+
+    private static final Instant CREATED_AT = Instant.parse("2024-01-29T09:00:00Z");
+
+    @TempDir
+    Path directory;
+
+    private Locale defaultLocale;
+
+    // the averages are formatted with the default locale
+    @BeforeEach
+    void useRootLocale() {
+        defaultLocale = Locale.getDefault();
+        Locale.setDefault(Locale.ROOT);
+    }
+
+    @AfterEach
+    void restoreLocale() {
+        Locale.setDefault(defaultLocale);
+    }
+
+    /**
+     * {@code report_golden.md} was rendered by the report as it was before the template was compiled, when it was
+     * built in memory and its placeholders replaced one after the other.
+     */
+    @Test
+    void rendersTheGoldenReport() throws IOException {
+        StringWriter report = new StringWriter();
+
+        new MarkdownReport(null, insights()).writeReport(report);
+
+        assertEquals(FileUtils.loadFileAsString("report_golden.md"), report.toString());
+    }
+
+    @Test
+    void writesTheSameReportToAFile() throws IOException {
+        File file = directory.resolve("report.md").toFile();
+        StringWriter report = new StringWriter();
+
+        new MarkdownReport(file, insights()).generateReport();
+        new MarkdownReport(null, insights()).writeReport(report);
+
+        assertEquals(report.toString(), Files.readString(file.toPath(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Ties in every ranking, an open merge request, one without diff stats, comments out of order and buckets over two
+     * weeks and two months.
+     */
+    static CodeReviewInsightService insights() {
+        return new CodeReviewInsightService(List.of(
+                mergeRequest("1", "Add the exporter", "alice", CREATED_AT, Duration.ofHours(5), 4, 120, 30,
+                             List.of("bob", "carol"),
+                             comment("bob", "nit: rename this", 90),
+                             comment("carol", "question: why a map?", 30),
+                             comment("bob", "looks good", 120)),
+                mergeRequest("2", "Fix the build", "bob", CREATED_AT.plus(Duration.ofDays(1)), Duration.ofHours(5), 4, null, null,
+                             List.of("alice"),
+                             comment("alice", "blocking: this leaks", 10)),
+                mergeRequest("3", "Réécrire le parseur", "carol", CREATED_AT.plus(Duration.ofDays(7)), null, 1, 3, 3,
+                             List.of(),
+                             comment("alice", "non-blocking: nits below", 45),
+                             comment("bob", "nits: spacing", 45)),
+                mergeRequest("4", "Bump dependencies", "alice", CREATED_AT.plus(Duration.ofDays(3)), Duration.ofDays(2), 12, 40, 40,
+                             List.of("bob", "carol"))
+        ).stream());
+    }
+
+    private static CodeReviewDataExporter.Comment comment(String author, String body, int minutesAfterCreation) {
+        return new CodeReviewDataExporter.Comment(author, body, CREATED_AT.plus(Duration.ofMinutes(minutesAfterCreation)));
+    }
+
+    private static CodeReviewDataExporter.MergeRequest mergeRequest(
+            String id,
+            String title,
+            String author,
+            Instant createdAt,
+            Duration duration,
+            int changes,
+            Integer linesAdded,
+            Integer linesRemoved,
+            List<String> approvers,
+            CodeReviewDataExporter.Comment... comments) {
+        // comments are timed from the creation of the first merge request, moved to the one they belong to
+        Duration shift = Duration.between(CREATED_AT, createdAt);
+        return new CodeReviewDataExporter.MergeRequest(
+                id,
+                title,
+                "https://gitlab.example.com/backend/-/merge_requests/" + id,
+                author,
+                createdAt,
+                duration == null ? null : createdAt.plus(duration),
+                changes,
+                approvers.stream().map(CodeReviewDataExporter.Approval::new).toList(),
+                List.of(comments).stream()
+                        .map(comment -> new CodeReviewDataExporter.Comment(comment.author(), comment.body(), comment.createdAt().plus(shift)))
+                        .toList(),
+                null,
+                linesAdded,
+                linesRemoved);
+    }
+
+}
@@ -0,0 +1,102 @@
+package antessio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+class ReportDefinitionTest {
+
+    private static final Instant FROM = Instant.parse("2024-01-01T00:00:00Z");
+    private static final Instant TO = Instant.parse("2024-04-01T00:00:00Z");
+
+    @Test
+    void keepsTheCommentsOfTheTeamOnly() {
+        ReportDefinition payments = new ReportDefinition(List.of("alice", "bob"), FROM, TO, null, "payments.md");
+        CodeReviewDataExporter.MergeRequest mr = mergeRequest("alice", "bob", "carol", "bob");
+
+        CodeReviewDataExporter.MergeRequest selected = payments.select(mr).orElseThrow();
+
+        assertEquals(List.of("bob", "bob"), selected.comments().stream().map(CodeReviewDataExporter.Comment::author).toList());
+        assertEquals(mr.withComments(selected.comments()), selected);
+    }
+
+    @Test
+    void keepsEveryCommentWithoutTeam() {
+        CodeReviewDataExporter.MergeRequest mr = mergeRequest("alice", "bob", "carol");
+
+        assertSame(mr, new ReportDefinition(null, FROM, TO, null, "all.md").select(mr).orElseThrow());
+        assertSame(mr, new ReportDefinition(List.of("alice", "bob", "carol"), FROM, TO, null, "all.md").select(mr).orElseThrow());
+    }
+
+    @Test
+    void selectsNothingOutsideTheReport() {
+        ReportDefinition payments = new ReportDefinition(List.of("alice"), FROM, TO, null, "payments.md");
+
+        assertTrue(payments.select(mergeRequest("carol", "alice")).isEmpty());
+    }
+
+    @Test
+    void doesNotCountCommentsOfOtherTeams() {
+        ReportDefinition payments = new ReportDefinition(List.of("alice", "bob"), FROM, TO, null, "payments.md");
+        ReportDefinition everyone = new ReportDefinition(null, FROM, TO, null, "everyone.md");
+        Map<ReportDefinition, Function<CodeReviewDataExporter.MergeRequest, Optional<CodeReviewDataExporter.MergeRequest>>> subsets =
+                new LinkedHashMap<>();
+        subsets.put(payments, payments::select);
+        subsets.put(everyone, everyone::select);
+
+        Map<ReportDefinition, CodeReviewInsightService> insights = CodeReviewInsightService.bySubset(
+                Stream.of(mergeRequest("alice", "bob", "carol", "carol"), mergeRequest("carol", "alice")),
+                subsets,
+                CodeReviewInsightService.DEFAULT_TOP_K);
+
+        assertEquals(Map.of("bob", 1), commenters(insights.get(payments)));
+        assertEquals(Map.of("carol", 2, "bob", 1, "alice", 1), commenters(insights.get(everyone)));
+    }
+
+    @Test
+    void crawlsOnlyReportsWithATeam() {
+        List<ReportDefinition> reports = List.of(
+                new ReportDefinition(List.of("alice", "bob"), FROM, TO, null, "payments.md"),
+                new ReportDefinition(List.of("bob", "carol"), FROM, TO, null, "checkout.md"));
+        assertEquals(List.of("alice", "bob", "carol"), ReportDefinition.teamOf(reports));
+
+        List<ReportDefinition> withoutTeam = List.of(reports.get(0), new ReportDefinition(List.of(), FROM, TO, null, "all.md"));
+        assertThrows(IllegalArgumentException.class, () -> ReportDefinition.teamOf(withoutTeam));
+    }
+
+    private static Map<String, Integer> commenters(CodeReviewInsightService insights) {
+        return insights.getTopCommenters()
+                       .stream()
+                       .collect(Collectors.toMap(CodeReviewInsightService.Commenter::name, CodeReviewInsightService.Commenter::comments));
+    }
+
+    private static CodeReviewDataExporter.MergeRequest mergeRequest(String author, String... commenters) {
+        Instant createdAt = FROM.plusSeconds(3600);
+        return new CodeReviewDataExporter.MergeRequest(
+                author + "-" + String.join("-", commenters),
+                "title",
+                "https://gitlab.example.com/mr",
+                author,
+                createdAt,
+                createdAt.plusSeconds(7200),
+                1,
+                List.of(),
+                Stream.of(commenters)
+                      .map(commenter -> new CodeReviewDataExporter.Comment(commenter, "looks good", createdAt.plusSeconds(60)))
+                      .toList(),
+                null);
+    }
+
+}
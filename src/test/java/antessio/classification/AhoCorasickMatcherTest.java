@@ -0,0 +1,87 @@
+package antessio.classification;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class AhoCorasickMatcherTest {
+
+    private record Match(String pattern, int start, int end) {
+
+    }
+
+    @Test
+    void reportsOverlappingMatches() {
+        List<String> patterns = List.of("he", "she", "his", "hers");
+
+        assertEquals(
+                List.of(new Match("she", 1, 4), new Match("he", 2, 4), new Match("hers", 2, 6)),
+                matches(patterns, "ushers"));
+    }
+
+    @Test
+    void reportsAPatternAndTheOneItPrefixes() {
+        List<String> patterns = List.of("nit", "nitpick");
+
+        assertEquals(
+                List.of(new Match("nit", 0, 3), new Match("nitpick", 0, 7)),
+                matches(patterns, "nitpick"));
+        assertEquals(List.of(new Match("nit", 0, 3)), matches(patterns, "nitpic"));
+    }
+
+    @Test
+    void followsFailureTransitionsAfterAPartialMatch() {
+        List<String> patterns = List.of("abcd", "bce");
+
+        assertEquals(List.of(new Match("bce", 1, 4)), matches(patterns, "abce"));
+    }
+
+    @Test
+    void ignoresCase() {
+        assertEquals(
+                List.of(new Match("Nit", 0, 3), new Match("Nit", 5, 8)),
+                matches(List.of("Nit"), "NIT, nit"));
+    }
+
+    @Test
+    void reportsMatchesInsideWords() {
+        // word boundaries are up to the caller
+        assertEquals(List.of(new Match("nit", 1, 4)), matches(List.of("nit"), "unit"));
+    }
+
+    @Test
+    void neverMatchesAcrossNonAsciiChars() {
+        List<String> patterns = List.of("nit", "ab");
+
+        assertEquals(List.of(new Match("nit", 2, 5)), matches(patterns, "é nit"));
+        assertEquals(List.of(), matches(patterns, "aéb"));
+        assertEquals(List.of(), matches(patterns, "nïtb"));
+    }
+
+    @Test
+    void matchesTheUtf8BytesOfAString() {
+        String text = "très nit";
+        CharSequence bytes = new String(text.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+
+        // é is two bytes, shifting the match by one
+        assertEquals(List.of(new Match("nit", 6, 9)), matches(List.of("nit"), bytes));
+    }
+
+    @Test
+    void rejectsEmptyAndNonAsciiPatterns() {
+        assertThrows(IllegalArgumentException.class, () -> new AhoCorasickMatcher(List.of("")));
+        assertThrows(IllegalArgumentException.class, () -> new AhoCorasickMatcher(List.of("né")));
+    }
+
+    private static List<Match> matches(List<String> patterns, CharSequence text) {
+        List<Match> matches = new ArrayList<>();
+        new AhoCorasickMatcher(patterns).forEachMatch(text, (pattern, start, end) -> matches.add(new Match(patterns.get(pattern), start, end)));
+        return matches;
+    }
+
+}
@@ -0,0 +1,76 @@
+package antessio.classification;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import antessio.CodeReviewDataExporter.Comment;
+
+class CommentClassifierTest {
+
+    private final CommentClassifier classifier = CommentClassifier.defaults();
+
+    @Test
+    void findsNitsWhateverTheCase() {
+        assertEquals(Set.of(CommentCategory.NIT), categories("nit: rename"));
+        assertEquals(Set.of(CommentCategory.NIT), categories("NIT rename"));
+        assertEquals(Set.of(CommentCategory.NIT), categories("(Nitpick) rename"));
+    }
+
+    @Test
+    void findsPlurals() {
+        assertEquals(Set.of(CommentCategory.NIT), categories("nits: a few renames"));
+        assertEquals(Set.of(CommentCategory.NIT), categories("Some NITs below"));
+        assertEquals(Set.of(CommentCategory.NIT), categories("just nitpicks"));
+    }
+
+    @Test
+    void matchesWholeWordsOnly() {
+        assertEquals(Set.of(), categories("add a unit test"));
+        assertEquals(Set.of(), categories("NITROGEN"));
+        assertEquals(Set.of(), categories("nit_picking"));
+        assertEquals(Set.of(CommentCategory.NIT), categories("é-nit-é"));
+    }
+
+    @Test
+    void findsSeveralCategories() {
+        assertEquals(
+                Set.of(CommentCategory.BLOCKING, CommentCategory.QUESTION),
+                categories("Blocker: why is this null? (question)"));
+    }
+
+    @Test
+    void ignoresNegatedMarkers() {
+        assertEquals(Set.of(), categories("non-blocking: rename this"));
+        assertEquals(Set.of(), categories("Not blocking, but the name is odd"));
+        assertEquals(Set.of(), categories("NON BLOCKING"));
+        assertEquals(Set.of(), categories("not a blocker"));
+        assertEquals(Set.of(CommentCategory.NIT), categories("non-blocking nit: rename this"));
+        assertEquals(Set.of(CommentCategory.BLOCKING), categories("cannot-blocking"));
+        assertEquals(Set.of(CommentCategory.BLOCKING), categories("blocking: this is not a nit"));
+    }
+
+    @Test
+    void findsQuestionsAndSuggestionsAsLabelsOnly() {
+        assertEquals(Set.of(), categories("I have a question about the approach"));
+        assertEquals(Set.of(), categories("Thanks for the suggestion"));
+        assertEquals(Set.of(CommentCategory.QUESTION), categories("Question: why a map?"));
+        assertEquals(Set.of(CommentCategory.QUESTION), categories("looks good\nquestion:why a map?"));
+        assertEquals(Set.of(CommentCategory.SUGGESTION), categories("[suggestion] use a set"));
+        assertEquals(Set.of(), categories("not a question: just curious"));
+    }
+
+    @Test
+    void keepsStoredCategories() {
+        Comment comment = new Comment("bob", "nit", null).withCategories(Set.of(CommentCategory.QUESTION));
+
+        assertEquals(Set.of(CommentCategory.QUESTION), classifier.categoriesOf(comment));
+    }
+
+    private Set<CommentCategory> categories(String body) {
+        return classifier.classify(new Comment("bob", body, null));
+    }
+
+}
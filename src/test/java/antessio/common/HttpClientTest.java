@@ -0,0 +1,127 @@
+package antessio.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpServer;
+
+class HttpClientTest {
+
+    private record Item(String name) {
+
+    }
+
+    private record Response(int status, String body, Map<String, String> headers) {
+
+    }
+
+    @TempDir
+    Path cacheDirectory;
+
+    private HttpServer server;
+    private final List<Headers> requests = new CopyOnWriteArrayList<>();
+    private volatile Response response;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            try (exchange) {
+                requests.add(exchange.getRequestHeaders());
+                Response current = response;
+                byte[] body = current.body().getBytes(StandardCharsets.UTF_8);
+                current.headers().forEach(exchange.getResponseHeaders()::set);
+                exchange.sendResponseHeaders(current.status(), body.length == 0 ? -1 : body.length);
+                exchange.getResponseBody().write(body);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void revalidatesWithETag() {
+        HttpClient client = client(new ResponseCache(cacheDirectory));
+        response = new Response(200, "{\"name\":\"first\"}", Map.of("ETag", "\"v1\""));
+        assertEquals(new Item("first"), client.get(Item.class, "items/1", Map.of()));
+
+        response = new Response(304, "", Map.of());
+        assertEquals(new Item("first"), client.get(Item.class, "items/1", Map.of()));
+
+        assertNull(requests.get(0).getFirst("If-None-Match"));
+        assertEquals("\"v1\"", requests.get(1).getFirst("If-None-Match"));
+    }
+
+    @Test
+    void revalidatesWithLastModified() {
+        HttpClient client = client(new ResponseCache(cacheDirectory));
+        String lastModified = "Wed, 21 Oct 2015 07:28:00 GMT";
+        response = new Response(200, "{\"name\":\"first\"}", Map.of("Last-Modified", lastModified));
+        client.get(Item.class, "items/1", Map.of());
+
+        response = new Response(304, "", Map.of());
+        assertEquals(new Item("first"), client.get(Item.class, "items/1", Map.of()));
+        assertEquals(lastModified, requests.get(1).getFirst("If-Modified-Since"));
+    }
+
+    @Test
+    void replacesTheEntryWhenChanged() {
+        HttpClient client = client(new ResponseCache(cacheDirectory));
+        response = new Response(200, "{\"name\":\"first\"}", Map.of("ETag", "\"v1\""));
+        client.get(Item.class, "items/1", Map.of());
+        response = new Response(200, "{\"name\":\"second\"}", Map.of("ETag", "\"v2\""));
+        assertEquals(new Item("second"), client.get(Item.class, "items/1", Map.of()));
+
+        response = new Response(304, "", Map.of());
+        assertEquals(new Item("second"), client.get(Item.class, "items/1", Map.of()));
+        assertEquals("\"v2\"", requests.get(2).getFirst("If-None-Match"));
+    }
+
+    @Test
+    void doesNotStoreResponsesWithoutValidators() {
+        HttpClient client = client(new ResponseCache(cacheDirectory));
+        response = new Response(200, "{\"name\":\"first\"}", Map.of());
+        client.get(Item.class, "items/1", Map.of());
+        client.get(Item.class, "items/1", Map.of());
+
+        assertNull(requests.get(1).getFirst("If-None-Match"));
+        assertNull(requests.get(1).getFirst("If-Modified-Since"));
+    }
+
+    @Test
+    void doesNotShareEntriesAcrossScopes() {
+        response = new Response(200, "{\"name\":\"first\"}", Map.of("ETag", "\"v1\""));
+        client(new ResponseCache(cacheDirectory, "token a")).get(Item.class, "items/1", Map.of());
+        client(new ResponseCache(cacheDirectory, "token b")).get(Item.class, "items/1", Map.of());
+
+        assertNull(requests.get(1).getFirst("If-None-Match"));
+    }
+
+    private HttpClient client(ResponseCache responseCache) {
+        return new HttpClient(
+                "http://127.0.0.1:" + server.getAddress().getPort(),
+                new ObjectMapperJsonConverter(),
+                responseCache,
+                null);
+    }
+
+}
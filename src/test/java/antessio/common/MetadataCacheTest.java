@@ -0,0 +1,130 @@
+package antessio.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MetadataCacheTest {
+
+    private static final Duration TTL = Duration.ofDays(1);
+    private static final Duration NEGATIVE_TTL = Duration.ofHours(1);
+
+    @TempDir
+    Path directory;
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"));
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void writesTheFileOnFlushOnly() {
+        Path file = directory.resolve("metadata.json");
+        MetadataCache cache = new MetadataCache(file, TTL, NEGATIVE_TTL, clock);
+
+        cache.get("users/alice", () -> load("1"));
+        cache.get("users/bob", () -> load("2"));
+        assertFalse(Files.exists(file));
+
+        cache.flush();
+        MetadataCache reloaded = new MetadataCache(file, TTL, NEGATIVE_TTL, clock);
+        assertEquals("1", reloaded.get("users/alice", () -> load("other")));
+        assertEquals("2", reloaded.get("users/bob", () -> load("other")));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void doesNotRewriteAnUnchangedFile() throws Exception {
+        Path file = directory.resolve("metadata.json");
+        MetadataCache cache = new MetadataCache(file, TTL, NEGATIVE_TTL, clock);
+        cache.get("users/alice", () -> load("1"));
+        cache.flush();
+        Files.delete(file);
+
+        cache.get("users/alice", () -> load("other"));
+        cache.flush();
+
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void forgetsValuesNotFoundSooner() {
+        MetadataCache cache = new MetadataCache(null, TTL, NEGATIVE_TTL, clock);
+        cache.get("users/alice", () -> load("1"));
+        cache.get("users/ghost", () -> load(""));
+
+        clock.advance(NEGATIVE_TTL);
+
+        assertEquals("1", cache.get("users/alice", () -> load("other")));
+        assertEquals("found", cache.get("users/ghost", () -> load("found")));
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void expiresValuesAfterTheirTtl() {
+        MetadataCache cache = new MetadataCache(null, TTL, NEGATIVE_TTL, clock);
+        cache.get("projects/1", () -> load("backend"));
+
+        clock.advance(TTL.minusSeconds(1));
+        assertEquals("backend", cache.get("projects/1", () -> load("renamed")));
+        clock.advance(Duration.ofSeconds(1));
+        assertEquals("renamed", cache.get("projects/1", () -> load("renamed")));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    void neverKeepsValuesNotFoundLongerThanOthers() {
+        MetadataCache cache = new MetadataCache(null, Duration.ofMinutes(1), clock);
+        cache.get("users/ghost", () -> load(""));
+
+        clock.advance(Duration.ofMinutes(1));
+
+        assertEquals("found", cache.get("users/ghost", () -> load("found")));
+        assertEquals(2, loads.get());
+    }
+
+    private String load(String value) {
+        loads.incrementAndGet();
+        return value;
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+
+    }
+
+}
@@ -0,0 +1,153 @@
+package antessio.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.Test;
+
+class QuantileSketchTest {
+
+    private static final double[] QUANTILES = {0, 0.1, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99, 1};
+
+    @Test
+    void staysWithinTheRelativeAccuracyOfExactQuantiles() {
+        // durations in minutes, from a minute to a year, skewed towards short ones
+        long[] values = logUniform(new Random(42), 10_000, 525_600);
+        for (double accuracy : new double[]{0.01, 0.05}) {
+            QuantileSketch sketch = sketchOf(accuracy, values);
+            for (double quantile : new double[]{0.5, 0.9, 0.99}) {
+                long exact = exactQuantile(values, quantile);
+                long estimated = sketch.quantile(quantile);
+                // the estimate is rounded to a long
+                assertTrue(Math.abs(estimated - exact) <= accuracy * exact + 0.5,
+                           "p%s: %d estimated, %d exact at %s".formatted(quantile, estimated, exact, accuracy));
+            }
+        }
+    }
+
+    @Test
+    void returnsTheExtremesExactly() {
+        long[] values = logUniform(new Random(7), 1_000, 100_000);
+        QuantileSketch sketch = sketchOf(QuantileSketch.DEFAULT_RELATIVE_ACCURACY, values);
+
+        assertEquals(LongStream.of(values).min().orElseThrow(), sketch.quantile(0));
+        assertEquals(LongStream.of(values).max().orElseThrow(), sketch.quantile(1));
+    }
+
+    @Test
+    void countsZeroValues() {
+        QuantileSketch zeros = sketchOf(QuantileSketch.DEFAULT_RELATIVE_ACCURACY, 0, 0, 0);
+        assertEquals(0, zeros.quantile(0.5));
+        assertEquals(0, zeros.quantile(1));
+
+        long[] values = {0, 0, 0, 0, 0, 10, 20, 30, 40, 50};
+        QuantileSketch mixed = sketchOf(QuantileSketch.DEFAULT_RELATIVE_ACCURACY, values);
+        assertEquals(0, mixed.quantile(0.25));
+        assertEquals(0, mixed.quantile(0.5));
+        assertWithinAccuracy(exactQuantile(values, 0.9), mixed.quantile(0.9));
+        assertEquals(50, mixed.quantile(1));
+        assertEquals(10, mixed.count());
+    }
+
+    @Test
+    void mergesSketchesOfDifferentRanges() {
+        long[] small = LongStream.rangeClosed(1, 100).toArray();
+        long[] large = LongStream.rangeClosed(1, 100).map(value -> value * 10_000).toArray();
+        QuantileSketch all = sketchOf(QuantileSketch.DEFAULT_RELATIVE_ACCURACY, concat(small, large));
+
+        // the small sketch has far fewer buckets than the large one, in both directions
+        QuantileSketch smallFirst = sketchOf(QuantileSketch.DEFAULT_RELATIVE_ACCURACY, small);
+        smallFirst.merge(sketchOf(QuantileSketch.DEFAULT_RELATIVE_ACCURACY, large));
+        QuantileSketch largeFirst = sketchOf(QuantileSketch.DEFAULT_RELATIVE_ACCURACY, large);
+        largeFirst.merge(sketchOf(QuantileSketch.DEFAULT_RELATIVE_ACCURACY, small));
+
+        assertSameQuantiles(all, smallFirst);
+        assertSameQuantiles(all, largeFirst);
+    }
+
+    @Test
+    void mergesToTheSketchOfAllValuesInAnyOrder() {
+        long[] values = logUniform(new Random(1), 3_000, 10_000);
+        long[] first = Arrays.copyOfRange(values, 0, 1_000);
+        long[] second = Arrays.copyOfRange(values, 1_000, 2_000);
+        long[] third = Arrays.copyOfRange(values, 2_000, 3_000);
+        QuantileSketch all = sketchOf(QuantileSketch.DEFAULT_RELATIVE_ACCURACY, values);
+
+        QuantileSketch inOrder = sketchOf(QuantileSketch.DEFAULT_RELATIVE_ACCURACY, first);
+        inOrder.merge(sketchOf(QuantileSketch.DEFAULT_RELATIVE_ACCURACY, second));
+        inOrder.merge(sketchOf(QuantileSketch.DEFAULT_RELATIVE_ACCURACY, third));
+        QuantileSketch reversed = sketchOf(QuantileSketch.DEFAULT_RELATIVE_ACCURACY, third);
+        QuantileSketch firstTwo = sketchOf(QuantileSketch.DEFAULT_RELATIVE_ACCURACY, second);
+        firstTwo.merge(sketchOf(QuantileSketch.DEFAULT_RELATIVE_ACCURACY, first));
+        reversed.merge(firstTwo);
+
+        assertSameQuantiles(all, inOrder);
+        assertSameQuantiles(all, reversed);
+    }
+
+    @Test
+    void mergesEmptySketches() {
+        QuantileSketch empty = new QuantileSketch();
+        assertEquals(0, empty.quantile(0.5));
+
+        QuantileSketch sketch = sketchOf(QuantileSketch.DEFAULT_RELATIVE_ACCURACY, 5, 50, 500);
+        sketch.merge(new QuantileSketch());
+        empty.merge(sketchOf(QuantileSketch.DEFAULT_RELATIVE_ACCURACY, 5, 50, 500));
+
+        assertSameQuantiles(sketchOf(QuantileSketch.DEFAULT_RELATIVE_ACCURACY, 5, 50, 500), sketch);
+        assertSameQuantiles(sketch, empty);
+    }
+
+    @Test
+    void rejectsWhatItCannotRepresent() {
+        assertThrows(IllegalArgumentException.class, () -> new QuantileSketch().add(-1));
+        assertThrows(IllegalArgumentException.class, () -> new QuantileSketch(0));
+        assertThrows(IllegalArgumentException.class, () -> new QuantileSketch().quantile(1.5));
+        assertThrows(IllegalArgumentException.class, () -> new QuantileSketch(0.01).merge(new QuantileSketch(0.02)));
+    }
+
+    private static QuantileSketch sketchOf(double accuracy, long... values) {
+        QuantileSketch sketch = new QuantileSketch(accuracy);
+        for (long value : values) {
+            sketch.add(value);
+        }
+        return sketch;
+    }
+
+    /**
+     * The value of rank {@code quantile * (n - 1)}, as defined by the sketch.
+     */
+    private static long exactQuantile(long[] values, double quantile) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[(int) (quantile * (sorted.length - 1))];
+    }
+
+    private static long[] logUniform(Random random, int count, long max) {
+        return LongStream.generate(() -> Math.round(Math.exp(random.nextDouble() * Math.log(max))))
+                         .limit(count)
+                         .toArray();
+    }
+
+    private static long[] concat(long[] a, long[] b) {
+        return LongStream.concat(LongStream.of(a), LongStream.of(b)).toArray();
+    }
+
+    private static void assertWithinAccuracy(long exact, long estimated) {
+        assertTrue(Math.abs(estimated - exact) <= QuantileSketch.DEFAULT_RELATIVE_ACCURACY * exact + 0.5,
+                   "%d estimated, %d exact".formatted(estimated, exact));
+    }
+
+    private static void assertSameQuantiles(QuantileSketch expected, QuantileSketch actual) {
+        assertEquals(expected.count(), actual.count());
+        for (double quantile : QUANTILES) {
+            assertEquals(expected.quantile(quantile), actual.quantile(quantile), "p" + quantile);
+        }
+    }
+
+}
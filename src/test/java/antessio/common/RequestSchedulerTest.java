@@ -0,0 +1,58 @@
+package antessio.common;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import antessio.common.exception.TooManyRequestsException;
+
+class RequestSchedulerTest {
+
+    @Test
+    void ignoresHeadersThatAreNoNumbers() {
+        RequestScheduler scheduler = new RequestScheduler();
+
+        assertDoesNotThrow(() -> scheduler.onResponse(Map.of("RateLimit-Remaining", List.of(""), "RateLimit-Reset", List.of(" "))));
+        assertDoesNotThrow(() -> scheduler.onResponse(Map.of("RateLimit-Remaining", List.of("99999999999999999999"), "RateLimit-Reset", List.of("1"))));
+        assertDoesNotThrow(() -> scheduler.onResponse(Map.of("RateLimit-Remaining", List.of("-1"), "RateLimit-Reset", List.of("x"))));
+        scheduler.execute(() -> null);
+        assertEquals(0, scheduler.getThrottledRequests());
+    }
+
+    @Test
+    void spreadsRequestsWhenFewAreRemaining() {
+        RequestScheduler scheduler = new RequestScheduler();
+        long reset = Instant.now().plusSeconds(2).getEpochSecond();
+        scheduler.onResponse(Map.of("ratelimit-remaining", List.of("40"), "ratelimit-reset", List.of(String.valueOf(reset))));
+
+        scheduler.execute(() -> null);
+        scheduler.execute(() -> null);
+
+        assertEquals(1, scheduler.getThrottledRequests());
+    }
+
+    @Test
+    void retriesAfterTooManyRequests() {
+        RequestScheduler scheduler = new RequestScheduler(2, Duration.ofMillis(1), Duration.ofMillis(10));
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = scheduler.execute(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new TooManyRequestsException("slow down", Map.of("Retry-After", List.of("0")));
+            }
+            return "done";
+        });
+
+        assertEquals("done", result);
+        assertEquals(1, scheduler.getRetries());
+        assertEquals(2, attempts.get());
+    }
+
+}
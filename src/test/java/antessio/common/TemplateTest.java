@@ -0,0 +1,65 @@
+package antessio.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class TemplateTest {
+
+    @Test
+    void replacesPlaceholdersWithTheirSections() throws IOException {
+        assertEquals(
+                "# Report\n\n42 merge requests since 2024\n",
+                render("# Report\n\n§count merge requests since §from\n", Map.of("§count", text("42"), "§from", text("2024"))));
+    }
+
+    @Test
+    void writesUnknownPlaceholdersAsTheyAre() throws IOException {
+        assertEquals("42 and §missing", render("§count and §missing", Map.of("§count", text("42"))));
+    }
+
+    @Test
+    void rendersRepeatedPlaceholdersEveryTime() throws IOException {
+        int[] renders = new int[1];
+        Template.Section counted = out -> out.write(String.valueOf(++renders[0]));
+
+        assertEquals("1, 2, 3", render("§n, §n, §n", Map.of("§n", counted)));
+    }
+
+    @Test
+    void endsPlaceholdersAtTheFirstCharacterOutsideTheirName() throws IOException {
+        Map<String, Template.Section> sections = Map.of("§a", text("A"), "§a_b", text("AB"), "§a1", text("A1"));
+
+        // names are lowercase letters, digits and underscores: "§ab" is a placeholder of its own
+        assertEquals("AB A1 A-b §ab AZ", render("§a_b §a1 §a-b §ab §aZ", sections));
+        assertEquals("AB.", render("§a_b.", sections));
+        assertEquals("§ §A", render("§ §A", sections));
+    }
+
+    @Test
+    void doesNotExpandPlaceholdersWrittenBySections() throws IOException {
+        assertEquals("§from|2024", render("§title|§from", Map.of("§title", text("§from"), "§from", text("2024"))));
+    }
+
+    @Test
+    void rendersTemplatesMadeOfPlaceholdersOrLiteralsOnly() throws IOException {
+        assertEquals("", render("", Map.of()));
+        assertEquals("no placeholder", render("no placeholder", Map.of("§x", text("x"))));
+        assertEquals("xy", render("§x§y", Map.of("§x", text("x"), "§y", text("y"))));
+    }
+
+    private static String render(String template, Map<String, Template.Section> sections) throws IOException {
+        StringWriter out = new StringWriter();
+        Template.compile(template).render(out, sections);
+        return out.toString();
+    }
+
+    private static Template.Section text(String text) {
+        return out -> out.write(text);
+    }
+
+}
@@ -0,0 +1,93 @@
+package antessio.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+class TopKTest {
+
+    private record Row(String name, int score) {
+
+    }
+
+    private static final Comparator<Row> BY_SCORE = Comparator.comparingInt(Row::score);
+
+    @Test
+    void keepsWhatAStableSortWouldKeep() {
+        Random random = new Random(11);
+        for (int round = 0; round < 200; round++) {
+            // few distinct scores: most rows tie
+            List<Row> rows = rows(random, random.nextInt(60), 1 + random.nextInt(8));
+            int k = random.nextInt(20);
+
+            assertEquals(sortedTop(rows, k), topK(rows, k).toList(), "k " + k + " of " + rows);
+        }
+    }
+
+    @Test
+    void keepsEverythingWhenKIsLargerThanTheInput() {
+        List<Row> rows = List.of(new Row("a", 1), new Row("b", 3), new Row("c", 1), new Row("d", 2));
+
+        assertEquals(List.of(new Row("b", 3), new Row("d", 2), new Row("a", 1), new Row("c", 1)), topK(rows, 10).toList());
+        assertEquals(List.of(), topK(List.of(), 10).toList());
+    }
+
+    @Test
+    void evictsTheLatestOfTheSmallestValues() {
+        TopK<Row> top = topK(List.of(new Row("a", 1), new Row("b", 1), new Row("c", 2)), 2);
+        assertEquals(List.of(new Row("c", 2), new Row("a", 1)), top.toList());
+
+        // a later equal value does not take the place of an earlier one
+        top.add(new Row("d", 1), 3);
+        assertEquals(List.of(new Row("c", 2), new Row("a", 1)), top.toList());
+
+        top.add(new Row("e", 2), 4);
+        assertEquals(List.of(new Row("c", 2), new Row("e", 2)), top.toList());
+    }
+
+    @Test
+    void combinesAsIfTheValuesFollowed() {
+        Random random = new Random(13);
+        for (int round = 0; round < 100; round++) {
+            List<Row> rows = rows(random, random.nextInt(60), 1 + random.nextInt(5));
+            int k = random.nextInt(15);
+            int split = rows.isEmpty() ? 0 : random.nextInt(rows.size() + 1);
+
+            TopK<Row> first = topK(rows.subList(0, split), k);
+            first.addAll(topK(rows.subList(split, rows.size()), k), split);
+
+            assertEquals(sortedTop(rows, k), first.toList());
+        }
+    }
+
+    @Test
+    void keepsNothingForZero() {
+        assertEquals(List.of(), topK(List.of(new Row("a", 1)), 0).toList());
+        assertThrows(IllegalArgumentException.class, () -> new TopK<>(-1, BY_SCORE));
+    }
+
+    private static TopK<Row> topK(List<Row> rows, int k) {
+        TopK<Row> top = new TopK<>(k, BY_SCORE);
+        for (int i = 0; i < rows.size(); i++) {
+            top.add(rows.get(i), i);
+        }
+        return top;
+    }
+
+    private static List<Row> sortedTop(List<Row> rows, int k) {
+        return rows.stream().sorted(BY_SCORE.reversed()).limit(k).toList();
+    }
+
+    private static List<Row> rows(Random random, int count, int distinctScores) {
+        return IntStream.range(0, count)
+                        .mapToObj(i -> new Row("row" + i, random.nextInt(distinctScores)))
+                        .toList();
+    }
+
+}
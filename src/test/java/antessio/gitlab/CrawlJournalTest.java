@@ -0,0 +1,89 @@
+package antessio.gitlab;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import antessio.common.ObjectMapperJsonConverter;
+
+class CrawlJournalTest {
+
+    private static final Instant FROM = Instant.parse("2024-01-01T00:00:00Z");
+    private static final Instant TO = Instant.parse("2024-04-01T00:00:00Z");
+    private static final Duration SHIFT = Duration.ofDays(3);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void resumesTheSameWindow() {
+        interrupt(run(FROM, TO, false));
+
+        try (CrawlJournal journal = open(run(FROM, TO, false))) {
+            assertTrue(journal.isListed("alice"));
+        }
+    }
+
+    @Test
+    void doesNotResumeAnotherWindowOfTheSameLength() {
+        interrupt(run(FROM, TO, false));
+
+        CrawlJournal.Run shifted = run(FROM.plus(SHIFT), TO.plus(SHIFT), false);
+        try (CrawlJournal journal = open(shifted)) {
+            assertFalse(journal.isListed("alice"));
+            assertEquals(shifted, journal.run());
+        }
+    }
+
+    @Test
+    void resumesAWindowRelativeToNowOverItsOwnWindow() {
+        CrawlJournal.Run interrupted = run(FROM, TO, true);
+        interrupt(interrupted);
+
+        try (CrawlJournal journal = open(run(FROM.plus(SHIFT), TO.plus(SHIFT), true))) {
+            assertTrue(journal.isListed("alice"));
+            assertEquals(interrupted, journal.run());
+        }
+    }
+
+    @Test
+    void doesNotResumeAFixedWindowWithARelativeOne() {
+        interrupt(run(FROM, TO, true));
+
+        try (CrawlJournal journal = open(run(FROM.plus(SHIFT), TO.plus(SHIFT), false))) {
+            assertFalse(journal.isListed("alice"));
+        }
+    }
+
+    @Test
+    void doesNotResumeAnotherRelativeWindowLength() {
+        interrupt(run(FROM, TO, true));
+
+        try (CrawlJournal journal = open(run(FROM.plus(SHIFT), TO, true))) {
+            assertFalse(journal.isListed("alice"));
+        }
+    }
+
+    private void interrupt(CrawlJournal.Run run) {
+        try (CrawlJournal journal = open(run)) {
+            journal.authorListed("alice");
+        }
+    }
+
+    private CrawlJournal open(CrawlJournal.Run run) {
+        return CrawlJournal.open(directory.resolve("merge_requests.json.journal"), run, new ObjectMapperJsonConverter());
+    }
+
+    private static CrawlJournal.Run run(Instant from, Instant to, boolean relativeWindow) {
+        return new CrawlJournal.Run(List.of("alice", "bob"), 100, List.of("1389"), false, 20, false, from, to, relativeWindow);
+    }
+
+}
@@ -0,0 +1,66 @@
+package antessio.gitlab;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.gitlab4j.api.models.Diff;
+import org.junit.jupiter.api.Test;
+
+class GitLabExporterTest {
+
+    @Test
+    void countsTheLinesOfEveryHunk() {
+        Diff diff = diff("""
+                @@ -1,3 +1,3 @@
+                 unchanged
+                -removed
+                +added
+                @@ -10,2 +10,3 @@ class Foo {
+                +added
+                +added
+                \\ No newline at end of file
+                """);
+
+        assertEquals(new GitLabExporter.ChangeStats(1, 3, 1), GitLabExporter.diffStats(List.of(diff)));
+    }
+
+    @Test
+    void countsRemovedAndAddedLinesThatLookLikeFileHeaders() {
+        // "--- a" removes the line "-- a" (e.g. a sql comment), "+++ b" adds "++ b"
+        Diff diff = diff("""
+                @@ -1,2 +1,2 @@
+                --- a
+                +++ b
+                """);
+
+        assertEquals(new GitLabExporter.ChangeStats(1, 1, 1), GitLabExporter.diffStats(List.of(diff)));
+    }
+
+    @Test
+    void skipsFileHeadersBeforeTheFirstHunk() {
+        Diff diff = diff("""
+                --- a/Foo.java
+                +++ b/Foo.java
+                @@ -1 +1 @@
+                -old
+                +new
+                """);
+
+        assertEquals(new GitLabExporter.ChangeStats(1, 1, 1), GitLabExporter.diffStats(List.of(diff)));
+    }
+
+    @Test
+    void countsFilesWithoutDiff() {
+        assertEquals(
+                new GitLabExporter.ChangeStats(2, 1, 0),
+                GitLabExporter.diffStats(List.of(diff(null), diff("@@ -0,0 +1 @@\n+new"))));
+    }
+
+    private static Diff diff(String text) {
+        Diff diff = new Diff();
+        diff.setDiff(text);
+        return diff;
+    }
+
+}
@@ -0,0 +1,203 @@
+package antessio.gitlab;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+import antessio.CodeReviewDataExporter.Approval;
+import antessio.CodeReviewDataExporter.Comment;
+import antessio.CodeReviewDataExporter.MergeRequest;
+import antessio.CodeReviewDataExporter.Project;
+import antessio.DataExporterFromBackup;
+
+class GitLabGraphQLExporterTest {
+
+    private static final Instant FROM = Instant.parse("2024-01-01T00:00:00Z");
+    private static final Instant TO = Instant.parse("2024-02-01T00:00:00Z");
+
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<JsonNode> queries = Collections.synchronizedList(new ArrayList<>());
+    private HttpServer server;
+    private volatile Function<JsonNode, String> answer;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/api/graphql", exchange -> {
+            try (exchange) {
+                JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+                queries.add(request);
+                byte[] body = answer.apply(request).getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void followsTheCursorOfMergeRequests() {
+        answer = request -> switch (String.valueOf(request.at("/variables/after").textValue())) {
+            case "null" -> mergeRequests("c2", mergeRequest(3, notes(null)), mergeRequest(2, notes(null)));
+            case "c2" -> mergeRequests(null, mergeRequest(1, notes(null)));
+            default -> throw new IllegalArgumentException("unexpected cursor " + request.at("/variables/after"));
+        };
+
+        List<MergeRequest> exported = exporter(List.of("alice"), 10).getMergeRequests();
+
+        assertEquals(List.of("3", "2", "1"), exported.stream().map(MergeRequest::id).toList());
+        assertEquals(2, queries.size());
+        assertEquals("alice", queries.get(0).at("/variables/username").textValue());
+        assertEquals(2, queries.get(0).at("/variables/first").intValue());
+        assertEquals(FROM.toString(), queries.get(0).at("/variables/createdAfter").textValue());
+        assertEquals(TO.toString(), queries.get(0).at("/variables/createdBefore").textValue());
+        assertEquals("c2", queries.get(1).at("/variables/after").textValue());
+    }
+
+    @Test
+    void convertsMergeRequestsAndStoresThemInTheBackup() {
+        answer = request -> request.at("/variables/username").textValue().equals("bob")
+                ? mergeRequests(null)
+                : mergeRequests(null, mergeRequest(7, notes(
+                        null,
+                        note("bob", "nit: rename", false),
+                        note("bob", "approved this merge request", true),
+                        note("outsider", "drive-by", false))));
+
+        List<MergeRequest> exported = exporter(List.of("alice", "bob"), 10).getMergeRequests();
+
+        MergeRequest mr = exported.get(0);
+        assertEquals("Change 7", mr.title());
+        assertEquals("alice", mr.author());
+        assertEquals(Instant.parse("2024-01-07T10:00:00Z"), mr.createdAt());
+        assertEquals(new Project("12", "backend", "https://gitlab.example.com/backend"), mr.project());
+        assertEquals(List.of(new Approval("carol")), mr.approvals());
+        assertEquals(List.of(new Comment("bob", "nit: rename", Instant.parse("2024-01-08T10:00:00Z"))), mr.comments());
+        assertEquals(3, mr.changes());
+        assertEquals(10, mr.linesAdded());
+        assertEquals(4, mr.linesRemoved());
+        assertEquals(exported, new DataExporterFromBackup(directory.resolve("merge_requests.json").toString()).getMergeRequests());
+    }
+
+    @Test
+    void fetchesTheFollowingPagesOfNotes() {
+        answer = request -> {
+            if (request.at("/query").textValue().contains("mergeRequest(id:")) {
+                assertEquals("gid://gitlab/MergeRequest/7", request.at("/variables/id").textValue());
+                return switch (request.at("/variables/after").textValue()) {
+                    case "n1" -> "{\"data\":{\"mergeRequest\":{\"notes\":" + notes("n2", note("bob", "second", false)) + "}}}";
+                    case "n2" -> "{\"data\":{\"mergeRequest\":{\"notes\":" + notes(null, note("bob", "third", false)) + "}}}";
+                    default -> throw new IllegalArgumentException("unexpected cursor " + request.at("/variables/after"));
+                };
+            }
+            return request.at("/variables/username").textValue().equals("bob")
+                    ? mergeRequests(null)
+                    : mergeRequests(null, mergeRequest(7, notes("n1", note("bob", "first", false))), mergeRequest(6, notes(null)));
+        };
+
+        List<MergeRequest> exported = exporter(List.of("alice", "bob"), 10).getMergeRequests();
+
+        assertEquals(List.of("first", "second", "third"), exported.get(0).comments().stream().map(Comment::body).toList());
+        assertEquals(List.of(), exported.get(1).comments());
+        // a listing per author, then the notes of the one merge request with more of them
+        assertEquals(4, queries.size());
+    }
+
+    @Test
+    void skipsUnknownUsers() {
+        answer = request -> request.at("/variables/username").textValue().equals("ghost")
+                ? "{\"data\":{\"user\":null}}"
+                : mergeRequests(null, mergeRequest(1, notes(null)));
+
+        List<MergeRequest> exported = exporter(List.of("ghost", "alice"), 10).getMergeRequests();
+
+        assertEquals(List.of("1"), exported.stream().map(MergeRequest::id).toList());
+    }
+
+    @Test
+    void raisesGraphQLErrors() {
+        answer = request -> "{\"data\":{\"user\":null},\"errors\":[{\"message\":\"Query has complexity of 300, which exceeds max complexity of 250\"}]}";
+
+        RuntimeException failure = assertThrows(RuntimeException.class, () -> exporter(List.of("alice"), 10).getMergeRequests());
+
+        assertTrue(failure.getMessage().contains("exceeds max complexity"), failure.getMessage());
+        assertNull(failure.getCause());
+    }
+
+    private GitLabGraphQLExporter exporter(List<String> team, int size) {
+        Gitlab gitlab = new Gitlab("token", "http://127.0.0.1:" + server.getAddress().getPort());
+        return new GitLabGraphQLExporter(
+                gitlab,
+                team,
+                size,
+                List.of(),
+                directory.resolve("merge_requests.json").toString(),
+                FROM,
+                TO,
+                GitLabExporter.Options.defaults().withPageSize(2));
+    }
+
+    private static String mergeRequests(String endCursor, String... nodes) {
+        return "{\"data\":{\"user\":{\"authoredMergeRequests\":" + connection(endCursor, nodes) + "}}}";
+    }
+
+    private static String mergeRequest(int iid, String notes) {
+        return """
+                {"id": "gid://gitlab/MergeRequest/%1$d", "iid": "%1$d", "title": "Change %1$d",
+                 "webUrl": "https://gitlab.example.com/backend/-/merge_requests/%1$d",
+                 "createdAt": "2024-01-%1$02dT10:00:00Z", "mergedAt": "2024-01-%1$02dT12:00:00Z",
+                 "author": {"username": "alice"},
+                 "project": {"id": "gid://gitlab/Project/12", "name": "backend", "webUrl": "https://gitlab.example.com/backend"},
+                 "diffStatsSummary": {"additions": 10, "deletions": 4, "fileCount": 3},
+                 "approvedBy": {"nodes": [{"username": "carol"}]},
+                 "notes": %2$s}
+                """.formatted(iid, notes);
+    }
+
+    private static String notes(String endCursor, String... notes) {
+        return connection(endCursor, notes);
+    }
+
+    private static String note(String author, String body, boolean system) {
+        return "{\"system\": %s, \"body\": \"%s\", \"createdAt\": \"2024-01-08T10:00:00Z\", \"author\": {\"username\": \"%s\"}}"
+                .formatted(system, body, author);
+    }
+
+    private static String connection(String endCursor, String... nodes) {
+        return "{\"pageInfo\": {\"hasNextPage\": %s, \"endCursor\": %s}, \"nodes\": [%s]}".formatted(
+                endCursor != null,
+                endCursor == null ? "null" : "\"" + endCursor + "\"",
+                String.join(",", nodes));
+    }
+
+}
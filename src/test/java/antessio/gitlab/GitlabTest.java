@@ -0,0 +1,127 @@
+package antessio.gitlab;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import org.gitlab4j.api.models.MergeRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.net.httpserver.HttpServer;
+
+class GitlabTest {
+
+    @TempDir
+    Path cacheDirectory;
+
+    private HttpServer server;
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/api/v4/", exchange -> {
+            try (exchange) {
+                requests.add(exchange.getRequestURI().getPath());
+                byte[] body = "{\"iid\":2,\"project_id\":1,\"changes\":[{\"new_path\":\"a\",\"diff\":\"@@ -1 +1 @@\\n-a\\n+b\"}]}"
+                        .getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+        });
+        server.createContext("/api/v4/merge_requests", exchange -> {
+            try (exchange) {
+                requests.add(exchange.getRequestURI().getPath());
+                byte[] body = "[]".getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.getResponseHeaders().set("ETag", "\"v1\"");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void fetchesChangesOfMergedMergeRequestsOnce() {
+        Gitlab gitlab = new Gitlab("token", host(), cacheDirectory.resolve("cache"));
+        MergeRequest mr = mergeRequest("merged");
+
+        MergeRequest fetched = gitlab.getMergeRequestChanges(mr);
+        MergeRequest cached = gitlab.getMergeRequestChanges(mr);
+
+        assertEquals(1, requests.size());
+        assertEquals(fetched.getChanges().get(0).getDiff(), cached.getChanges().get(0).getDiff());
+        assertEquals("a", cached.getChanges().get(0).getNewPath());
+    }
+
+    @Test
+    void fetchesChangesOfOpenMergeRequestsEveryTime() {
+        Gitlab gitlab = new Gitlab("token", host(), cacheDirectory.resolve("cache"));
+        MergeRequest mr = mergeRequest("opened");
+
+        gitlab.getMergeRequestChanges(mr);
+        gitlab.getMergeRequestChanges(mr);
+
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    void doesNotServeTheCacheOfAnotherToken() {
+        MergeRequest mr = mergeRequest("merged");
+
+        new Gitlab("token", host(), cacheDirectory.resolve("cache")).getMergeRequestChanges(mr);
+        new Gitlab("other token", host(), cacheDirectory.resolve("cache")).getMergeRequestChanges(mr);
+
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    void doesNotStoreListings() throws IOException {
+        Path cache = cacheDirectory.resolve("cache");
+        Gitlab gitlab = new Gitlab("token", host(), cache);
+
+        try (Stream<MergeRequest> listed = gitlab.getMergedMergeRequestsStream(Instant.EPOCH, Instant.now(), 1L)) {
+            assertEquals(0, listed.count());
+        }
+
+        assertEquals(1, requests.size());
+        assertFalse(Files.exists(cache) && Files.list(cache).findAny().isPresent());
+    }
+
+    private String host() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private static MergeRequest mergeRequest(String state) {
+        MergeRequest mr = new MergeRequest();
+        mr.setProjectId(1L);
+        mr.setIid(2L);
+        mr.setState(state);
+        if (state.equals("merged")) {
+            mr.setMergedAt(new Date());
+        }
+        return mr;
+    }
+
+}
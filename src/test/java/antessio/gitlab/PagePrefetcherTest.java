@@ -0,0 +1,66 @@
+package antessio.gitlab;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+class PagePrefetcherTest {
+
+    @Test
+    void handsPagesOverInOrder() {
+        try (ConcurrentFetcher fetcher = new ConcurrentFetcher(1);
+             PagePrefetcher<Integer> prefetcher = new PagePrefetcher<>(fetcher, (pages, closed) -> {
+                 for (int page = 0; page < 10; page++) {
+                     pages.accept(List.of(2 * page, 2 * page + 1));
+                 }
+             })) {
+            assertEquals(IntStream.range(0, 20).boxed().toList(), prefetcher.stream().toList());
+        }
+    }
+
+    @Test
+    void runsAheadOfTheConsumerByAFewPagesOnly() throws InterruptedException {
+        AtomicInteger listed = new AtomicInteger();
+        CountDownLatch stopped = new CountDownLatch(1);
+        try (ConcurrentFetcher fetcher = new ConcurrentFetcher(1);
+             PagePrefetcher<Integer> prefetcher = new PagePrefetcher<>(fetcher, (pages, closed) -> {
+                 for (int page = 0; page < 100 && !closed.getAsBoolean(); page++) {
+                     pages.accept(List.of(page));
+                     listed.incrementAndGet();
+                 }
+                 stopped.countDown();
+             })) {
+            Thread.sleep(300);
+            // the pages buffered, the next one waits for room
+            assertEquals(PagePrefetcher.PAGES_BUFFERED, listed.get());
+
+            assertEquals(List.of(0, 1, 2), prefetcher.stream().limit(3).toList());
+            prefetcher.close();
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> stopped.await());
+        }
+        assertTrue(listed.get() < 100);
+    }
+
+    @Test
+    void rethrowsTheFailureAfterThePagesBeforeIt() {
+        try (ConcurrentFetcher fetcher = new ConcurrentFetcher(1);
+             PagePrefetcher<Integer> prefetcher = new PagePrefetcher<>(fetcher, (pages, closed) -> {
+                 pages.accept(List.of(1));
+                 throw new IllegalStateException("listing failed");
+             })) {
+            var items = prefetcher.stream().iterator();
+            assertEquals(1, items.next());
+            assertThrows(IllegalStateException.class, items::hasNext);
+        }
+    }
+
+}
@@ -0,0 +1,123 @@
+package antessio.rollup;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.DoubleStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import antessio.common.QuantileSketch;
+
+class RollupsTest {
+
+    private static final double[] QUANTILES = {0, 0.5, 0.9, 0.99, 1};
+    // a monday
+    private static final Instant WEEK_1 = Instant.parse("2024-01-01T00:00:00Z");
+    private static final Instant WEEK_2 = WEEK_1.plus(Duration.ofDays(7));
+    private static final Instant WEEK_3 = WEEK_2.plus(Duration.ofDays(7));
+    private static final Instant WEEK_4 = WEEK_3.plus(Duration.ofDays(7));
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsBackWhatWasWritten() {
+        Random random = new Random(17);
+        Rollups rollups = new Rollups();
+        for (int i = 0; i < 500; i++) {
+            rollups.accept(
+                    WEEK_1.plus(Duration.ofHours(random.nextInt(24 * 90))),
+                    random.nextInt(4) == 0 ? null : random.nextInt(30 * 24 * 60),
+                    random.nextInt(3) == 0 ? null : random.nextInt(3 * 24 * 60),
+                    random.nextInt(6));
+        }
+        Path file = directory.resolve("rollups.json");
+
+        rollups.write(file);
+        Rollups read = Rollups.read(file);
+
+        for (Granularity granularity : Granularity.values()) {
+            assertEquals(valuesOf(rollups.buckets(granularity)), valuesOf(read.buckets(granularity)));
+        }
+        assertEquals(valuesOf(List.of(rollups.window(Granularity.WEEK, WEEK_1, WEEK_4))),
+                     valuesOf(List.of(read.window(Granularity.WEEK, WEEK_1, WEEK_4))));
+    }
+
+    @Test
+    void bucketsByWeekAndMonth() {
+        Rollups rollups = new Rollups();
+        rollups.accept(WEEK_1, 60, null, 0);
+        rollups.accept(WEEK_2.minusMillis(1), 120, null, 0);
+        rollups.accept(WEEK_2, 180, null, 0);
+
+        assertEquals(List.of(WEEK_1, WEEK_2), rollups.buckets(Granularity.WEEK).stream().map(Rollup::start).toList());
+        assertEquals(List.of(2L, 1L), rollups.buckets(Granularity.WEEK).stream().map(Rollup::mergeRequests).toList());
+        assertEquals(List.of(3L), rollups.buckets(Granularity.MONTH).stream().map(Rollup::mergeRequests).toList());
+    }
+
+    @Test
+    void windowsTakeTheBucketsStartingFromFromUpToTo() {
+        Rollups rollups = new Rollups();
+        rollups.accept(WEEK_1.plus(Duration.ofDays(2)), 60, 10, 1);
+        rollups.accept(WEEK_2, 120, 20, 2);
+        rollups.accept(WEEK_3.plus(Duration.ofDays(6)), 180, 30, 3);
+        rollups.accept(WEEK_4, 240, 40, 4);
+
+        // from is inclusive, to exclusive
+        Rollup window = rollups.window(Granularity.WEEK, WEEK_2, WEEK_4);
+        assertEquals(WEEK_2, window.start());
+        assertEquals(2, window.mergeRequests());
+        assertEquals(150, window.averageDurationInMinutes());
+        assertEquals(25, window.averageTimeToFirstCommentInMinutes());
+        assertEquals(5, window.nitComments());
+        QuantileSketch durations = new QuantileSketch();
+        durations.add(120);
+        durations.add(180);
+        for (double quantile : QUANTILES) {
+            assertEquals(durations.quantile(quantile), window.durationQuantiles().quantile(quantile));
+        }
+
+        // the bucket started before from is left out, even if the window starts inside it
+        assertEquals(2, rollups.window(Granularity.WEEK, WEEK_1.plus(Duration.ofDays(1)), WEEK_4).mergeRequests());
+        assertEquals(4, rollups.window(Granularity.WEEK, WEEK_1, WEEK_4.plusMillis(1)).mergeRequests());
+        assertEquals(0, rollups.window(Granularity.WEEK, WEEK_2, WEEK_2).mergeRequests());
+    }
+
+    @Test
+    void windowsDoNotChangeTheBuckets() {
+        Rollups rollups = new Rollups();
+        rollups.accept(WEEK_1, 60, 10, 1);
+        rollups.accept(WEEK_2, 120, 20, 2);
+
+        rollups.window(Granularity.WEEK, WEEK_1, WEEK_3);
+        rollups.window(Granularity.WEEK, WEEK_1, WEEK_3);
+
+        assertEquals(List.of(1L, 1L), rollups.buckets(Granularity.WEEK).stream().map(Rollup::mergeRequests).toList());
+    }
+
+    private static List<List<Object>> valuesOf(List<Rollup> rollups) {
+        return rollups.stream().map(RollupsTest::valuesOf).toList();
+    }
+
+    private static List<Object> valuesOf(Rollup rollup) {
+        return List.of(
+                rollup.start(),
+                rollup.mergeRequests(),
+                rollup.averageDurationInMinutes(),
+                rollup.averageTimeToFirstCommentInMinutes(),
+                rollup.nitComments(),
+                Arrays.toString(rollup.duration().counts()),
+                Arrays.toString(rollup.timeToFirstComment().counts()),
+                Arrays.toString(rollup.nitCommentsPerMergeRequest().counts()),
+                DoubleStream.of(QUANTILES).mapToLong(rollup.durationQuantiles()::quantile).boxed().toList(),
+                DoubleStream.of(QUANTILES).mapToLong(rollup.timeToFirstCommentQuantiles()::quantile).boxed().toList());
+    }
+
+}
@@ -0,0 +1,173 @@
+package antessio.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import antessio.CodeReviewDataExporter;
+
+class InsightServerTest {
+
+    private static final Instant CREATED_AT = Instant.parse("2024-01-01T10:00:00Z");
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private InsightServer server;
+
+    @AfterEach
+    void closeServer() {
+        server.close();
+    }
+
+    @Test
+    void answersOnceTheInsightsAreComputed() throws Exception {
+        CountDownLatch crawled = new CountDownLatch(1);
+        start(() -> {
+            try {
+                crawled.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return () -> List.of(mergeRequest());
+        });
+        assertEquals(503, get("/health").statusCode());
+
+        crawled.countDown();
+
+        HttpResponse<String> health = awaitRefresh();
+        assertTrue(health.body().contains("\"mergeRequests\":1"), health.body());
+    }
+
+    @Test
+    void servesTheReportWithItsLength() throws Exception {
+        start(() -> () -> List.of(mergeRequest()));
+        awaitRefresh();
+
+        HttpResponse<String> report = get("/report");
+
+        assertEquals(200, report.statusCode());
+        assertEquals("text/markdown; charset=utf-8", report.headers().firstValue("Content-Type").orElseThrow());
+        assertEquals(report.body().getBytes(StandardCharsets.UTF_8).length,
+                     report.headers().firstValueAsLong("Content-Length").orElseThrow());
+        assertTrue(report.body().contains("alice"), report.body());
+    }
+
+    @Test
+    void servesTheTrendsOfTheWindow() throws Exception {
+        Instant secondWeek = CREATED_AT.plus(Duration.ofDays(7));
+        start(() -> () -> List.of(mergeRequest("1", CREATED_AT), mergeRequest("2", secondWeek), mergeRequest("3", secondWeek)));
+        awaitRefresh();
+
+        HttpResponse<String> weeks = get("/trends?granularity=week");
+        HttpResponse<String> fromSecondWeek = get("/trends?granularity=week&from=2024-01-08T00:00:00Z");
+        HttpResponse<String> months = get("/trends?granularity=month&to=2024-01-01T00:00:00Z");
+
+        assertEquals(200, weeks.statusCode());
+        assertTrue(weeks.body().contains("\"bucket\":\"2024-01-01\""), weeks.body());
+        assertTrue(weeks.body().contains("\"bucket\":\"2024-01-08\""), weeks.body());
+        assertFalse(fromSecondWeek.body().contains("\"bucket\":\"2024-01-01\""), fromSecondWeek.body());
+        assertTrue(fromSecondWeek.body().contains("\"mergeRequests\":2"), fromSecondWeek.body());
+        assertEquals("[]", months.body());
+        assertEquals(400, get("/trends?granularity=year").statusCode());
+        assertEquals(400, get("/trends?from=yesterday").statusCode());
+    }
+
+    @Test
+    void answersUnknownPathsAndMethods() throws Exception {
+        start(() -> () -> List.of(mergeRequest()));
+        awaitRefresh();
+
+        assertEquals(404, get("/nothing").statusCode());
+        assertEquals(405, client.send(
+                HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + "/health"))
+                           .POST(HttpRequest.BodyPublishers.noBody())
+                           .build(),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    @Test
+    void keepsServingWhenARefreshFails() throws Exception {
+        AtomicBoolean gitlabDown = new AtomicBoolean();
+        start(() -> {
+            if (gitlabDown.get()) {
+                throw new IllegalStateException("gitlab is down");
+            }
+            return () -> List.of(mergeRequest());
+        });
+        String computed = awaitRefresh().body();
+
+        gitlabDown.set(true);
+        server.refresh();
+
+        HttpResponse<String> health = get("/health");
+        assertEquals(200, health.statusCode());
+        assertEquals(computed, health.body());
+    }
+
+    @Test
+    void stopsAnsweringOnceClosed() {
+        start(() -> () -> List.of(mergeRequest()));
+
+        server.close();
+
+        assertThrows(IOException.class, () -> get("/health"));
+    }
+
+    private void start(Supplier<CodeReviewDataExporter> exporter) {
+        server = new InsightServer(0, exporter, Duration.ofHours(1), Clock.systemUTC());
+        server.start();
+    }
+
+    private HttpResponse<String> awaitRefresh() throws IOException, InterruptedException {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            HttpResponse<String> health = get("/health");
+            if (health.statusCode() == 200) {
+                return health;
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError("insights not computed");
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return client.send(
+                HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + path)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static CodeReviewDataExporter.MergeRequest mergeRequest() {
+        return mergeRequest("1", CREATED_AT);
+    }
+
+    private static CodeReviewDataExporter.MergeRequest mergeRequest(String id, Instant createdAt) {
+        return new CodeReviewDataExporter.MergeRequest(
+                id,
+                "Add payments",
+                "https://gitlab.example.com/mr/" + id,
+                "alice",
+                createdAt,
+                createdAt.plus(Duration.ofHours(3)),
+                4,
+                List.of(new CodeReviewDataExporter.Approval("bob")),
+                List.of(new CodeReviewDataExporter.Comment("bob", "nit: naming", createdAt.plus(Duration.ofMinutes(30)))),
+                null);
+    }
+
+}
@@ -0,0 +1,166 @@
+package antessio.snapshot;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import antessio.CodeReviewDataExporter.Approval;
+import antessio.CodeReviewDataExporter.Comment;
+import antessio.CodeReviewDataExporter.MergeRequest;
+import antessio.CodeReviewDataExporter.Project;
+import antessio.classification.CommentCategory;
+import antessio.snapshot.SnapshotFormat.Section;
+
+class SnapshotTest {
+
+    private static final Project PROJECT = new Project("12", "backend", "https://gitlab.example.com/backend");
+    private static final Instant CREATED_AT = Instant.parse("2024-01-02T10:15:30.123Z");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsBackWhatWasWritten() {
+        List<MergeRequest> mergeRequests = List.of(
+                new MergeRequest(
+                        "1", "Add the exporter", "https://gitlab.example.com/backend/1", "alice",
+                        CREATED_AT, CREATED_AT.plusSeconds(3600), 4,
+                        List.of(new Approval("bob")),
+                        List.of(new Comment("bob", "nit: rename this", CREATED_AT.plusSeconds(60)),
+                                new Comment("carol", "Ça marche 👍", CREATED_AT.plusSeconds(120))),
+                        PROJECT, 10, 2),
+                new MergeRequest(
+                        "2", "Fix the build", "https://gitlab.example.com/backend/2", "bob",
+                        CREATED_AT.plusSeconds(7200), CREATED_AT.plusSeconds(9000), 1,
+                        List.of(new Approval("alice"), new Approval("carol")),
+                        List.of(),
+                        PROJECT, 3, 0));
+
+        Snapshot snapshot = writeAndOpen(mergeRequests, false);
+
+        assertEquals(2, snapshot.size());
+        assertEquals(mergeRequests.get(0), snapshot.mergeRequest(0));
+        assertEquals(mergeRequests.get(1), snapshot.mergeRequest(1));
+        assertEquals(Set.of(CommentCategory.NIT), snapshot.mergeRequest(0).comments().get(0).categories());
+    }
+
+    @Test
+    void keepsNullFields() {
+        MergeRequest mr = new MergeRequest(
+                "1", null, null, "alice", CREATED_AT, null, null,
+                List.of(new Approval(null)),
+                List.of(new Comment(null, null, null), new Comment("bob", "", CREATED_AT)),
+                null, null, null);
+
+        MergeRequest read = writeAndOpen(List.of(mr), false).mergeRequest(0);
+
+        assertEquals(mr, read);
+    }
+
+    @Test
+    void readsMissingApprovalsAndCommentsAsEmpty() {
+        MergeRequest mr = new MergeRequest("1", "title", "url", "alice", CREATED_AT, null, 1, null, null, PROJECT, 1, 1);
+
+        MergeRequest read = writeAndOpen(List.of(mr), false).mergeRequest(0);
+
+        assertEquals(List.of(), read.approvals());
+        assertEquals(List.of(), read.comments());
+    }
+
+    @Test
+    void sharesDictionaryStringsBetweenRecords() {
+        List<MergeRequest> mergeRequests = List.of(
+                new MergeRequest("1", "t", "u1", "alice", CREATED_AT, null, 1, List.of(new Approval("bob")), List.of(), PROJECT, 1, 1),
+                new MergeRequest("2", "t", "u2", "bob", CREATED_AT, null, 1, List.of(), List.of(new Comment("alice", "ok", CREATED_AT)), PROJECT, 1, 1));
+
+        Snapshot snapshot = writeAndOpen(mergeRequests, false);
+
+        assertSame(snapshot.mergeRequest(0).author(), snapshot.mergeRequest(1).comments().get(0).author());
+        assertSame(snapshot.mergeRequest(0).approvals().get(0).username(), snapshot.mergeRequest(1).author());
+        assertSame(snapshot.mergeRequest(0).project(), snapshot.mergeRequest(1).project());
+    }
+
+    @Test
+    void decodesLazyBodiesOnDemand() {
+        MergeRequest mr = new MergeRequest(
+                "1", "t", "u", "alice", CREATED_AT, null, 1, List.of(),
+                List.of(new Comment("bob", "première remarque", CREATED_AT), new Comment("bob", null, CREATED_AT)),
+                PROJECT, 1, 1);
+
+        List<Comment> comments = writeAndOpen(List.of(mr), true).mergeRequest(0).comments();
+
+        assertEquals("première remarque", comments.get(0).lazyBody().text());
+        assertEquals("première remarque", comments.get(0).body());
+        assertNull(comments.get(1).lazyBody());
+        assertNull(comments.get(1).body());
+    }
+
+    @Test
+    void treatsSectionsMissingFromOlderSnapshotsAsNull() throws IOException {
+        MergeRequest mr = new MergeRequest(
+                "1", "t", "u", "alice", CREATED_AT, null, 1, List.of(),
+                List.of(new Comment("bob", "nit: typo", CREATED_AT)),
+                PROJECT, 5, 6);
+        Path file = directory.resolve("merge_requests.snapshot");
+        SnapshotWriter.write(file, List.of(mr).stream());
+        // as written before comments were classified and lines counted
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, Section.COMMENT_CATEGORIES.ordinal()), 6L * Integer.BYTES);
+        }
+
+        MergeRequest read = Snapshot.open(file).mergeRequest(0);
+
+        assertNull(read.comments().get(0).categories());
+        assertNull(read.linesAdded());
+        assertNull(read.linesRemoved());
+        assertEquals("nit: typo", read.comments().get(0).body());
+    }
+
+    @Test
+    void leavesOnlyTheSnapshotBehind() throws IOException {
+        Path file = directory.resolve("merge_requests.snapshot");
+        SnapshotWriter.write(file, List.<MergeRequest>of().stream());
+
+        try (var files = Files.list(directory)) {
+            assertEquals(List.of(file), files.toList());
+        }
+        assertEquals(0, Snapshot.open(file).size());
+    }
+
+    @Test
+    void writesNothingPastTheLimit() throws IOException {
+        Path file = directory.resolve("merge_requests.snapshot");
+        SnapshotWriter.write(file, List.<MergeRequest>of().stream());
+        byte[] previous = Files.readAllBytes(file);
+        MergeRequest mr = new MergeRequest("1", "title", "url", "alice", CREATED_AT, null, 1, List.of(), List.of(), PROJECT, 1, 1);
+
+        assertFalse(SnapshotWriter.write(file, List.of(mr).stream(), previous.length));
+
+        assertArrayEquals(previous, Files.readAllBytes(file));
+        try (var files = Files.list(directory)) {
+            assertEquals(List.of(file), files.toList());
+        }
+    }
+
+    private Snapshot writeAndOpen(List<MergeRequest> mergeRequests, boolean lazyCommentBodies) {
+        Path file = directory.resolve("merge_requests.snapshot");
+        SnapshotWriter.write(file, mergeRequests.stream());
+        return Snapshot.open(file, lazyCommentBodies);
+    }
+
+}